@@ -0,0 +1,234 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.List;
+
+class AstPrinter implements Expression.Visitor<String>, Statement.Visitor<String> {
+
+    String print(Expression expression) {
+        return expression.accept(this);
+    }
+
+    String print(Statement statement) {
+        // parser returns null for declarations it failed to parse
+        if (statement == null) {
+            return "(error)";
+        }
+
+        return statement.accept(this);
+    }
+
+    String print(List<Statement> statements) {
+        StringBuilder sb = new StringBuilder();
+        for (Statement statement : statements) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(print(statement));
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public String visitLiteralExpression(Expression.Literal expression) {
+        if (expression.value == null) {
+            return "nil";
+        } else if (expression.value instanceof String s) {
+            return "\"" + s + "\"";
+        } else {
+            return expression.value.toString();
+        }
+    }
+
+    @Override
+    public String visitUnaryExpression(Expression.Unary expression) {
+        return parenthesize(expression.operator.lexeme, expression.expression);
+    }
+
+    @Override
+    public String visitBinaryExpression(Expression.Binary expression) {
+        return parenthesize(expression.operator.lexeme, expression.left, expression.right);
+    }
+
+    @Override
+    public String visitTernaryExpression(Expression.Ternary expression) {
+        return parenthesize("?:", expression.condition, expression.left, expression.right);
+    }
+
+    @Override
+    public String visitGroupingExpression(Expression.Grouping expression) {
+        return parenthesize("group", expression.expression);
+    }
+
+    @Override
+    public String visitVariableExpression(Expression.Variable expression) {
+        return expression.name.lexeme;
+    }
+
+    @Override
+    public String visitAssignExpression(Expression.Assign expression) {
+        return parenthesize("= " + expression.name.lexeme, expression.expression);
+    }
+
+    @Override
+    public String visitLogicalExpression(Expression.Logical expression) {
+        return parenthesize(expression.operator.lexeme, expression.left, expression.right);
+    }
+
+    @Override
+    public String visitCallExpression(Expression.Call expression) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(call ").append(print(expression.callee));
+        for (Expression argument : expression.arguments) {
+            sb.append(' ').append(print(argument));
+        }
+        sb.append(')');
+
+        return sb.toString();
+    }
+
+    @Override
+    public String visitLambdaExpression(Expression.Lambda expression) {
+        return function("lambda", expression.params, expression.body);
+    }
+
+    @Override
+    public String visitGetExpression(Expression.Get expression) {
+        return parenthesize(". " + expression.name.lexeme, expression.object);
+    }
+
+    @Override
+    public String visitSetExpression(Expression.Set expression) {
+        return parenthesize(".= " + expression.name.lexeme, expression.object, expression.value);
+    }
+
+    @Override
+    public String visitThisExpression(Expression.This expression) {
+        return "this";
+    }
+
+    @Override
+    public String visitSuperExpression(Expression.Super expression) {
+        return "(super " + expression.method.lexeme + ")";
+    }
+
+    @Override
+    public String visitExprStatement(Statement.Expr statement) {
+        return parenthesize(";", statement.expression);
+    }
+
+    @Override
+    public String visitPrintStatement(Statement.Print statement) {
+        return parenthesize("print", statement.expression);
+    }
+
+    @Override
+    public String visitVarStatement(Statement.Var statement) {
+        if (statement.initializer == null) {
+            return "(var " + statement.name.lexeme + ")";
+        }
+
+        return parenthesize("var " + statement.name.lexeme, statement.initializer);
+    }
+
+    @Override
+    public String visitBlockStatement(Statement.Block statement) {
+        return "(block " + print(statement.statements) + ")";
+    }
+
+    @Override
+    public String visitIfStatement(Statement.If statement) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(if ").append(print(statement.condition));
+        sb.append(' ').append(print(statement.thenBranch));
+        if (statement.elseBranch != null) {
+            sb.append(' ').append(print(statement.elseBranch));
+        }
+        sb.append(')');
+
+        return sb.toString();
+    }
+
+    @Override
+    public String visitWhileStatement(Statement.While statement) {
+        return "(while " + print(statement.condition) + " " + print(statement.body) + ")";
+    }
+
+    @Override
+    public String visitBreakStatement(Statement.Break statement) {
+        return "(break)";
+    }
+
+    @Override
+    public String visitFunctionStatement(Statement.Function statement) {
+        return function("fun " + statement.name.lexeme, statement.params, statement.body);
+    }
+
+    @Override
+    public String visitReturnStatement(Statement.Return statement) {
+        if (statement.expression == null) {
+            return "(return)";
+        }
+
+        return parenthesize("return", statement.expression);
+    }
+
+    @Override
+    public String visitClassStatement(Statement.Class statement) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(class ").append(statement.name.lexeme);
+        if (statement.parent != null) {
+            sb.append(" < ").append(statement.parent.name.lexeme);
+        }
+        for (Statement.Function method : statement.methods) {
+            sb.append(' ').append(print(method));
+        }
+        sb.append(')');
+
+        return sb.toString();
+    }
+
+    @Override
+    public String visitImportStatement(Statement.Import statement) {
+        return "(import " + statement.path.lexeme + ")";
+    }
+
+    @Override
+    public String visitParallelForStatement(Statement.ParallelFor statement) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(parallel-for ").append(statement.variable.lexeme)
+            .append(' ').append(print(statement.from))
+            .append(' ').append(print(statement.to));
+        for (int i = 0; i < statement.reductions.size(); i++) {
+            sb.append(" (reduce ").append(statement.operators.get(i).lexeme)
+                .append(' ').append(statement.reductions.get(i).name.lexeme).append(')');
+        }
+        sb.append(' ').append(print(statement.body)).append(')');
+        return sb.toString();
+    }
+
+    private String function(String name, List<Token> params, List<Statement> body) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(name).append(" (");
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(params.get(i).lexeme);
+        }
+        sb.append(") ").append(print(body)).append(')');
+
+        return sb.toString();
+    }
+
+    private String parenthesize(String name, Expression... expressions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(name);
+        for (Expression expression : expressions) {
+            sb.append(' ').append(print(expression));
+        }
+        sb.append(')');
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ahodanenok.craftinginterpreters.lox.AstWriter.*;
+
+// Reads a program written by AstWriter.
+final class AstReader {
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ByteBuffer buffer;
+    private Object[] constants;
+
+    AstReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // throws IllegalStateException if the data is malformed
+    List<Statement> read() {
+        try {
+            readConstants();
+            List<Statement> program = readStatements();
+            if (buffer.hasRemaining()) {
+                throw new IllegalStateException("Unexpected data after the program");
+            }
+
+            return program;
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalStateException) {
+                throw e;
+            }
+
+            throw new IllegalStateException("Malformed program", e);
+        }
+    }
+
+    private void readConstants() {
+        constants = new Object[readVarInt()];
+        for (int i = 0; i < constants.length; i++) {
+            int tag = readVarInt();
+            if (tag == CONSTANT_STRING) {
+                byte[] bytes = new byte[readVarInt()];
+                buffer.get(bytes);
+                constants[i] = new String(bytes, StandardCharsets.UTF_8);
+            } else if (tag == CONSTANT_NUMBER) {
+                constants[i] = Double.longBitsToDouble(buffer.getLong());
+            } else {
+                throw new IllegalStateException("Unknown constant: " + tag);
+            }
+        }
+    }
+
+    private Statement readStatement() {
+        int tag = readVarInt();
+        return switch (tag) {
+            case 0 -> null;
+            case STATEMENT_EXPR -> new Statement.Expr(readExpression());
+            case STATEMENT_PRINT -> new Statement.Print(readExpression());
+            case STATEMENT_VAR -> new Statement.Var(readToken(), readExpression());
+            case STATEMENT_BLOCK -> new Statement.Block(readStatements());
+            case STATEMENT_IF -> new Statement.If(readExpression(), readStatement(), readStatement());
+            case STATEMENT_WHILE -> new Statement.While(readToken(), readExpression(), readStatement());
+            case STATEMENT_BREAK -> new Statement.Break(readToken());
+            case STATEMENT_FUNCTION -> readFunction();
+            case STATEMENT_RETURN -> new Statement.Return(readToken(), readExpression());
+            case STATEMENT_CLASS -> {
+                Token name = readToken();
+                Expression.Variable parent = (Expression.Variable) readExpression();
+                int count = readVarInt();
+                List<Statement.Function> methods = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    methods.add(readFunction());
+                }
+                yield new Statement.Class(name, parent, methods);
+            }
+            case STATEMENT_IMPORT -> new Statement.Import(readToken(), readToken());
+            case STATEMENT_PARALLEL_FOR -> {
+                Token keyword = readToken();
+                Token variable = readToken();
+                Expression from = readExpression();
+                Expression to = readExpression();
+                List<Token> operators = readTokens();
+                List<Expression.Variable> reductions = new ArrayList<>(operators.size());
+                for (int i = 0; i < operators.size(); i++) {
+                    reductions.add((Expression.Variable) readExpression());
+                }
+                yield new Statement.ParallelFor(keyword, variable, from, to, operators, reductions, readStatement());
+            }
+            default -> throw new IllegalStateException("Unknown statement: " + tag);
+        };
+    }
+
+    private Expression readExpression() {
+        int tag = readVarInt();
+        switch (tag) {
+            case 0 -> {
+                return null;
+            }
+            case EXPRESSION_LITERAL -> {
+                int kind = readVarInt();
+                return switch (kind) {
+                    case LITERAL_NIL -> new Expression.Literal(null);
+                    case LITERAL_TRUE -> new Expression.Literal(true);
+                    case LITERAL_FALSE -> new Expression.Literal(false);
+                    case LITERAL_CONSTANT -> new Expression.Literal(constants[readVarInt()]);
+                    default -> throw new IllegalStateException("Unknown literal: " + kind);
+                };
+            }
+            case EXPRESSION_UNARY -> {
+                return new Expression.Unary(readToken(), readExpression());
+            }
+            case EXPRESSION_BINARY -> {
+                return new Expression.Binary(readToken(), readExpression(), readExpression());
+            }
+            case EXPRESSION_TERNARY -> {
+                return new Expression.Ternary(readExpression(), readExpression(), readExpression());
+            }
+            case EXPRESSION_GROUPING -> {
+                return new Expression.Grouping(readExpression());
+            }
+            case EXPRESSION_VARIABLE -> {
+                Expression.Variable variable = new Expression.Variable(readToken());
+                variable.depth = readDepth();
+                return variable;
+            }
+            case EXPRESSION_ASSIGN -> {
+                Expression.Assign assignment = new Expression.Assign(readToken(), readExpression());
+                assignment.depth = readDepth();
+                return assignment;
+            }
+            case EXPRESSION_LOGICAL -> {
+                return new Expression.Logical(readToken(), readExpression(), readExpression());
+            }
+            case EXPRESSION_CALL -> {
+                Expression callee = readExpression();
+                Token paren = readToken();
+                int count = readVarInt();
+                List<Expression> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    arguments.add(readExpression());
+                }
+                return new Expression.Call(callee, paren, arguments);
+            }
+            case EXPRESSION_LAMBDA -> {
+                return new Expression.Lambda(readToken(), readTokens(), readStatements());
+            }
+            case EXPRESSION_GET -> {
+                return new Expression.Get(readExpression(), readToken());
+            }
+            case EXPRESSION_SET -> {
+                return new Expression.Set(readExpression(), readToken(), readExpression());
+            }
+            case EXPRESSION_THIS -> {
+                Expression.This expression = new Expression.This(readToken());
+                expression.depth = readDepth();
+                return expression;
+            }
+            case EXPRESSION_SUPER -> {
+                Expression.Super expression = new Expression.Super(readToken(), readToken());
+                expression.depth = readDepth();
+                return expression;
+            }
+            default -> throw new IllegalStateException("Unknown expression: " + tag);
+        }
+    }
+
+    private List<Statement> readStatements() {
+        int count = readVarInt();
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(readStatement());
+        }
+
+        return statements;
+    }
+
+    private Statement.Function readFunction() {
+        return new Statement.Function(readToken(), readTokens(), readStatements());
+    }
+
+    private List<Token> readTokens() {
+        int count = readVarInt();
+        List<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(readToken());
+        }
+
+        return tokens;
+    }
+
+    private Token readToken() {
+        TokenType type = TOKEN_TYPES[readVarInt()];
+        String lexeme = (String) constants[readVarInt()];
+        int literal = readVarInt();
+        int line = readVarInt();
+
+        return new Token(type, lexeme, literal != 0 ? constants[literal - 1] : null, line);
+    }
+
+    private int readDepth() {
+        return readVarInt() - 1;
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,415 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes a resolved program in the binary form read by AstReader.
+//
+// Nodes are written depth-first, each one starting with its tag,
+// 0 is written in place of missing nodes. Integers are written as
+// unsigned varints. Lexemes and literals are written as indexes
+// into the constant pool which precedes the nodes.
+final class AstWriter implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+
+    static final int CONSTANT_STRING = 0;
+    static final int CONSTANT_NUMBER = 1;
+
+    static final int LITERAL_NIL = 0;
+    static final int LITERAL_TRUE = 1;
+    static final int LITERAL_FALSE = 2;
+    static final int LITERAL_CONSTANT = 3;
+
+    static final int STATEMENT_EXPR = 1;
+    static final int STATEMENT_PRINT = 2;
+    static final int STATEMENT_VAR = 3;
+    static final int STATEMENT_BLOCK = 4;
+    static final int STATEMENT_IF = 5;
+    static final int STATEMENT_WHILE = 6;
+    static final int STATEMENT_BREAK = 7;
+    static final int STATEMENT_FUNCTION = 8;
+    static final int STATEMENT_RETURN = 9;
+    static final int STATEMENT_CLASS = 10;
+    static final int STATEMENT_IMPORT = 11;
+    static final int STATEMENT_PARALLEL_FOR = 12;
+
+    static final int EXPRESSION_LITERAL = 1;
+    static final int EXPRESSION_UNARY = 2;
+    static final int EXPRESSION_BINARY = 3;
+    static final int EXPRESSION_TERNARY = 4;
+    static final int EXPRESSION_GROUPING = 5;
+    static final int EXPRESSION_VARIABLE = 6;
+    static final int EXPRESSION_ASSIGN = 7;
+    static final int EXPRESSION_LOGICAL = 8;
+    static final int EXPRESSION_CALL = 9;
+    static final int EXPRESSION_LAMBDA = 10;
+    static final int EXPRESSION_GET = 11;
+    static final int EXPRESSION_SET = 12;
+    static final int EXPRESSION_THIS = 13;
+    static final int EXPRESSION_SUPER = 14;
+
+    private final Map<Object, Integer> constants = new HashMap<>();
+    private final Output pool = new Output();
+    private final Output nodes = new Output();
+
+    // returns the constant pool followed by the nodes
+    byte[] write(List<Statement> program) {
+        writeStatements(program);
+
+        Output output = new Output();
+        output.writeVarInt(constants.size());
+        output.write(pool);
+        output.write(nodes);
+
+        return output.toByteArray();
+    }
+
+    @Override
+    public Void visitExprStatement(Statement.Expr statement) {
+        nodes.writeVarInt(STATEMENT_EXPR);
+        write(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Statement.Print statement) {
+        nodes.writeVarInt(STATEMENT_PRINT);
+        write(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Statement.Var statement) {
+        nodes.writeVarInt(STATEMENT_VAR);
+        write(statement.name);
+        write(statement.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Statement.Block statement) {
+        nodes.writeVarInt(STATEMENT_BLOCK);
+        writeStatements(statement.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Statement.If statement) {
+        nodes.writeVarInt(STATEMENT_IF);
+        write(statement.condition);
+        write(statement.thenBranch);
+        write(statement.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Statement.While statement) {
+        nodes.writeVarInt(STATEMENT_WHILE);
+        write(statement.keyword);
+        write(statement.condition);
+        write(statement.body);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStatement(Statement.Break statement) {
+        nodes.writeVarInt(STATEMENT_BREAK);
+        write(statement.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(Statement.Function statement) {
+        nodes.writeVarInt(STATEMENT_FUNCTION);
+        writeFunction(statement);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Statement.Return statement) {
+        nodes.writeVarInt(STATEMENT_RETURN);
+        write(statement.keyword);
+        write(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStatement(Statement.Class statement) {
+        nodes.writeVarInt(STATEMENT_CLASS);
+        write(statement.name);
+        write(statement.parent);
+        nodes.writeVarInt(statement.methods.size());
+        for (Statement.Function method : statement.methods) {
+            writeFunction(method);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitImportStatement(Statement.Import statement) {
+        nodes.writeVarInt(STATEMENT_IMPORT);
+        write(statement.keyword);
+        write(statement.path);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelForStatement(Statement.ParallelFor statement) {
+        nodes.writeVarInt(STATEMENT_PARALLEL_FOR);
+        write(statement.keyword);
+        write(statement.variable);
+        write(statement.from);
+        write(statement.to);
+        writeTokens(statement.operators);
+        for (Expression.Variable reduction : statement.reductions) {
+            write(reduction);
+        }
+        write(statement.body);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        nodes.writeVarInt(EXPRESSION_LITERAL);
+        if (expression.value == null) {
+            nodes.writeVarInt(LITERAL_NIL);
+        } else if (expression.value instanceof Boolean b) {
+            nodes.writeVarInt(b ? LITERAL_TRUE : LITERAL_FALSE);
+        } else {
+            nodes.writeVarInt(LITERAL_CONSTANT);
+            nodes.writeVarInt(constant(expression.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        nodes.writeVarInt(EXPRESSION_UNARY);
+        write(expression.operator);
+        write(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        nodes.writeVarInt(EXPRESSION_BINARY);
+        write(expression.operator);
+        write(expression.left);
+        write(expression.right);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpression(Expression.Ternary expression) {
+        nodes.writeVarInt(EXPRESSION_TERNARY);
+        write(expression.condition);
+        write(expression.left);
+        write(expression.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        nodes.writeVarInt(EXPRESSION_GROUPING);
+        write(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Expression.Variable expression) {
+        nodes.writeVarInt(EXPRESSION_VARIABLE);
+        write(expression.name);
+        writeDepth(expression.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpression(Expression.Assign expression) {
+        nodes.writeVarInt(EXPRESSION_ASSIGN);
+        write(expression.name);
+        write(expression.expression);
+        writeDepth(expression.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(Expression.Logical expression) {
+        nodes.writeVarInt(EXPRESSION_LOGICAL);
+        write(expression.operator);
+        write(expression.left);
+        write(expression.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(Expression.Call expression) {
+        nodes.writeVarInt(EXPRESSION_CALL);
+        write(expression.callee);
+        write(expression.paren);
+        nodes.writeVarInt(expression.arguments.size());
+        for (Expression argument : expression.arguments) {
+            write(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLambdaExpression(Expression.Lambda expression) {
+        nodes.writeVarInt(EXPRESSION_LAMBDA);
+        write(expression.keyword);
+        writeTokens(expression.params);
+        writeStatements(expression.body);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpression(Expression.Get expression) {
+        nodes.writeVarInt(EXPRESSION_GET);
+        write(expression.object);
+        write(expression.name);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpression(Expression.Set expression) {
+        nodes.writeVarInt(EXPRESSION_SET);
+        write(expression.object);
+        write(expression.name);
+        write(expression.value);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpression(Expression.This expression) {
+        nodes.writeVarInt(EXPRESSION_THIS);
+        write(expression.keyword);
+        writeDepth(expression.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpression(Expression.Super expression) {
+        nodes.writeVarInt(EXPRESSION_SUPER);
+        write(expression.keyword);
+        write(expression.method);
+        writeDepth(expression.depth);
+        return null;
+    }
+
+    private void write(Statement statement) {
+        if (statement == null) {
+            nodes.writeVarInt(0);
+        } else {
+            statement.accept(this);
+        }
+    }
+
+    private void write(Expression expression) {
+        if (expression == null) {
+            nodes.writeVarInt(0);
+        } else {
+            expression.accept(this);
+        }
+    }
+
+    private void writeStatements(List<Statement> statements) {
+        nodes.writeVarInt(statements.size());
+        for (Statement statement : statements) {
+            write(statement);
+        }
+    }
+
+    private void writeFunction(Statement.Function function) {
+        write(function.name);
+        writeTokens(function.params);
+        writeStatements(function.body);
+    }
+
+    private void writeTokens(List<Token> tokens) {
+        nodes.writeVarInt(tokens.size());
+        for (Token token : tokens) {
+            write(token);
+        }
+    }
+
+    // literal is written as 0 if there is none, otherwise as its constant index plus one
+    private void write(Token token) {
+        nodes.writeVarInt(token.type.ordinal());
+        nodes.writeVarInt(constant(token.lexeme));
+        nodes.writeVarInt(token.literal != null ? constant(token.literal) + 1 : 0);
+        nodes.writeVarInt(token.line);
+    }
+
+    // globals have depth -1
+    private void writeDepth(int depth) {
+        nodes.writeVarInt(depth + 1);
+    }
+
+    private int constant(Object value) {
+        Integer index = constants.get(value);
+        if (index != null) {
+            return index;
+        }
+
+        if (value instanceof String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            pool.writeVarInt(CONSTANT_STRING);
+            pool.writeVarInt(bytes.length);
+            pool.write(bytes, bytes.length);
+        } else if (value instanceof Double d) {
+            pool.writeVarInt(CONSTANT_NUMBER);
+            pool.writeLong(Double.doubleToRawLongBits(d));
+        } else {
+            throw new IllegalArgumentException("Unexpected constant: " + value);
+        }
+
+        index = constants.size();
+        constants.put(value, index);
+
+        return index;
+    }
+
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int i = 7; i >= 0; i--) {
+                bytes[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void write(byte[] data, int length) {
+            ensureCapacity(length);
+            System.arraycopy(data, 0, bytes, size, length);
+            size += length;
+        }
+
+        void write(Output output) {
+            write(output.bytes, output.size);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+    }
+}
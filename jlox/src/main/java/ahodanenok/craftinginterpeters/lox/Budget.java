@@ -0,0 +1,197 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Limits of a single run of a program, shared by the interpreters of the tasks it
+// spawns. Loop iterations and calls are steps, each interpreter counts them down
+// from a batch taken from the budget and only comes back here when the batch is used
+// up, so the cancellation and the deadline are checked once per batch, and an
+// unlimited budget costs a decrement and a comparison per step. Interpreters of
+// tasks take smaller batches, as there may be many of them running at once, and
+// give back what they haven't used when they are done. A batch is also at most
+// a small part of what is left, so an interpreter can't hold the rest of a budget
+// while the others need it.
+//
+// Memory is accounted the same way, in bytes allocated by the program, whether
+// they are still used or not, as the interpreter can't tell when the garbage
+// collector frees them. The sizes are estimated for a 64-bit JVM with compressed
+// references, including the maps holding variables and fields.
+//
+// Code waiting on a channel or a task takes no steps, so the threads running the
+// program register here and are interrupted once it's cancelled or its deadline
+// passes, a watchdog thread wakes them up at the deadline. The interrupted wait
+// fails with the error of the budget, see Interpreter.visitCallExpression.
+// Forked tasks are not interrupted, they run on the shared fork/join pool.
+final class Budget {
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "lox-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+        return watchdog;
+    }
+
+    static final int BATCH = 1024;
+    static final int TASK_BATCH = 64;
+    // a batch is at most this part of the steps or calls left
+    private static final int SHARE = 16;
+    static final long MEMORY_BATCH = 64 * 1024;
+    static final long TASK_MEMORY_BATCH = 4 * 1024;
+
+    static final int ENVIRONMENT_SIZE = 320;
+    // a variable or a field
+    static final int ENTRY_SIZE = 32;
+    static final int INSTANCE_SIZE = 160;
+    static final int FUNCTION_SIZE = 24;
+
+    static long stringSize(String s) {
+        return 40 + 2L * s.length();
+    }
+
+    // left to take, negative if unlimited
+    private final AtomicLong steps;
+    private final AtomicLong calls;
+    private final AtomicLong memory;
+    // System.nanoTime() at which the run fails, 0 if none
+    private final long deadline;
+    private volatile boolean cancelled;
+    // guarded by this
+    private final Set<Thread> threads = new HashSet<>();
+    private boolean interrupted;
+    private ScheduledFuture<?> watchdog;
+
+    Budget() {
+        this(-1, -1, -1, 0);
+    }
+
+    // the deadline is absolute, i.e. System.nanoTime() + timeout
+    Budget(long maxSteps, long maxCalls, long maxMemory, long deadline) {
+        this.steps = new AtomicLong(maxSteps);
+        this.calls = new AtomicLong(maxCalls);
+        this.memory = new AtomicLong(maxMemory);
+        this.deadline = deadline;
+    }
+
+    void cancel() {
+        cancelled = true;
+        interrupt();
+    }
+
+    // the run starts on the calling thread
+    synchronized void start() {
+        if (deadline != 0) {
+            watchdog = WATCHDOG.schedule(this::interrupt, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        enter();
+    }
+
+    // the run and all its tasks have ended
+    synchronized void finish() {
+        exit();
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+    }
+
+    // the calling thread runs the program or one of its tasks until it exits
+    synchronized void enter() {
+        threads.add(Thread.currentThread());
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // clears the interrupt of the budget, so it doesn't affect what the thread does next
+    synchronized void exit() {
+        threads.remove(Thread.currentThread());
+        if (interrupted) {
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized void interrupt() {
+        interrupted = true;
+        threads.forEach(Thread::interrupt);
+    }
+
+    // returns the number of steps the interpreter can take before asking again
+    int takeSteps(Token token, int batch) {
+        check(token);
+        return take(steps, batch, token, "Step limit exceeded.");
+    }
+
+    int takeCalls(Token token, int batch) {
+        check(token);
+        return take(calls, batch, token, "Call limit exceeded.");
+    }
+
+    // returns the steps, calls and bytes taken but not used
+    void giveBack(long unusedSteps, long unusedCalls, long unusedMemory) {
+        giveBack(steps, unusedSteps);
+        giveBack(calls, unusedCalls);
+        giveBack(memory, unusedMemory);
+    }
+
+    private static void giveBack(AtomicLong left, long unused) {
+        if (unused > 0) {
+            left.updateAndGet(n -> n < 0 ? n : n + unused);
+        }
+    }
+
+    // returns the number of bytes, at least the needed ones, the interpreter
+    // can allocate before asking again
+    long takeMemory(Token token, long needed, long batch) {
+        check(token);
+        while (true) {
+            long n = memory.get();
+            if (n < 0) {
+                return Math.max(needed, batch);
+            }
+            if (n < needed) {
+                throw new RuntimeError(token, "Memory limit exceeded.");
+            }
+
+            long taken = Math.max(needed, Math.min(n / SHARE, batch));
+            if (memory.compareAndSet(n, n - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    // fails if the budget is cancelled or its deadline has passed
+    void check(Token token) {
+        if (cancelled) {
+            throw new RuntimeError(token, "Execution cancelled.");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new RuntimeError(token, "Execution timed out.");
+        }
+    }
+
+    private static int take(AtomicLong left, int batch, Token token, String message) {
+        while (true) {
+            long n = left.get();
+            if (n < 0) {
+                return batch;
+            }
+            if (n == 0) {
+                throw new RuntimeError(token, message);
+            }
+
+            int taken = (int) Math.min(Math.max(1, n / SHARE), batch);
+            if (left.compareAndSet(n, n - taken)) {
+                return taken;
+            }
+        }
+    }
+}
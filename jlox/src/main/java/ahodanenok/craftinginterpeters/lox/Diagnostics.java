@@ -0,0 +1,55 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// collects errors to report them later, i.e. once it is known
+// they belong to the final result of a speculative or concurrent phase
+final class Diagnostics implements ErrorReporter {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    @Override
+    public void error(int line, String msg) {
+        entries.add(new Entry(line, null, msg));
+    }
+
+    @Override
+    public void error(Token token, String msg) {
+        entries.add(new Entry(token.line, token, msg));
+    }
+
+    boolean hasErrors() {
+        return !entries.isEmpty();
+    }
+
+    void reportTo(ErrorReporter reporter) {
+        for (Entry entry : entries) {
+            if (entry.token != null) {
+                reporter.error(entry.token, entry.msg);
+            } else {
+                reporter.error(entry.line, entry.msg);
+            }
+        }
+    }
+
+    // errors tied to a token keep their line, they must be reparsed to move
+    Diagnostics withLineOffset(int delta) {
+        Diagnostics diagnostics = new Diagnostics();
+        for (Entry entry : entries) {
+            if (entry.token != null) {
+                diagnostics.entries.add(entry);
+            } else {
+                diagnostics.entries.add(new Entry(entry.line + delta, null, entry.msg));
+            }
+        }
+
+        return diagnostics;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private record Entry(int line, Token token, String msg) { }
+}
@@ -1,22 +1,38 @@
 package ahodanenok.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Variables are stored in concurrent maps, so closures called from tasks spawned
+// on other threads can read and assign them. The maps can't hold nulls, nil is
+// stored as NIL instead: values read from the maps directly must be decoded.
 class Environment {
 
-    private final Map<String, Object> values = new HashMap<>();
-    private final Set<String> initialized = new HashSet<>();
+    static final Object NIL = new Object();
+
+    final Map<String, Object> values = new ConcurrentHashMap<>();
+    final Set<String> initialized = ConcurrentHashMap.newKeySet();
     final Environment parent;
+    // the outermost environment, each module has its own globals
+    final Environment globals;
 
     Environment() {
         parent = null;
+        globals = this;
     }
 
     Environment(Environment parent) {
         this.parent = parent;
+        this.globals = parent.globals;
+    }
+
+    static Object encode(Object value) {
+        return value != null ? value : NIL;
+    }
+
+    static Object decode(Object value) {
+        return value != NIL ? value : null;
     }
 
     void markInitialized(String name) {
@@ -24,12 +40,17 @@ class Environment {
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        values.put(name, encode(value));
+    }
+
+    // defines all variables of the other environment in this one
+    void defineAll(Environment other) {
+        values.putAll(other.values);
+        initialized.addAll(other.initialized);
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        if (values.replace(name.lexeme, encode(value)) != null) {
             return;
         }
 
@@ -43,11 +64,12 @@ class Environment {
     }
 
     void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        ancestor(distance).values.put(name.lexeme, encode(value));
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
+        Object value = values.get(name.lexeme);
+        if (value != null) {
             if (!initialized.contains(name.lexeme)) {
                 // makes variable initialization required
                 // conflicts with the test suite
@@ -56,7 +78,7 @@ class Environment {
                 //     String.format("Unitialized variable '%s'.", name.lexeme));
             }
 
-            return values.get(name.lexeme);
+            return decode(value);
         }
 
         if (parent != null) {
@@ -68,7 +90,7 @@ class Environment {
     }
 
     Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+        return decode(ancestor(distance).values.get(name));
     }
 
     private Environment ancestor(int distance) {
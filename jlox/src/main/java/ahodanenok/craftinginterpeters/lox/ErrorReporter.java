@@ -0,0 +1,12 @@
+package ahodanenok.craftinginterpreters.lox;
+
+interface ErrorReporter {
+
+    void error(int line, String msg);
+
+    void error(Token token, String msg);
+
+    default void runtimeError(Token token, String msg) {
+        error(token, msg);
+    }
+}
@@ -0,0 +1,58 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events of Lox code, recorded along with the events of the JVM.
+// The interpreter checks whether an event is enabled on the instances below before
+// creating it, which is a read of a flag when nothing is recorded.
+final class Events {
+
+    static final Call CALL = new Call();
+    static final Instantiation INSTANTIATION = new Instantiation();
+    static final Failure FAILURE = new Failure();
+
+    private Events() { }
+
+    @Name("lox.Call")
+    @Label("Lox Call")
+    @Category("Lox")
+    @Description("A call of a Lox function, a native or a host method")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class Call extends Event {
+
+        @Label("Function")
+        @Description("Name of the function and the line it's declared at")
+        String function;
+    }
+
+    @Name("lox.Instantiation")
+    @Label("Lox Instantiation")
+    @Category("Lox")
+    @Description("Creation of an instance of a Lox class, including its initializer")
+    @StackTrace(false)
+    static final class Instantiation extends Event {
+
+        @Label("Class")
+        String className;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class Failure extends Event {
+
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+}
@@ -118,6 +118,7 @@ abstract class Expression {
     final static class Variable extends Expression {
 
         final Token name;
+        int depth = -1;
 
         Variable(Token name) {
             this.name = name;
@@ -133,6 +134,7 @@ abstract class Expression {
 
         final Token name;
         final Expression expression;
+        int depth = -1;
 
         Assign(Token name, Expression expression) {
             this.name = name;
@@ -203,6 +205,7 @@ abstract class Expression {
 
         final Expression object;
         final Token name;
+        Object cache;
 
         Get(Expression object, Token name) {
             this.object = object;
@@ -220,6 +223,7 @@ abstract class Expression {
         final Expression object;
         final Token name;
         final Expression value;
+        Object cache;
 
         Set(Expression object, Token name, Expression value) {
             this.object = object;
@@ -236,6 +240,7 @@ abstract class Expression {
     final static class This extends Expression {
 
         final Token keyword;
+        int depth = -1;
 
         This(Token keyword) {
             this.keyword = keyword;
@@ -251,6 +256,7 @@ abstract class Expression {
 
         final Token keyword;
         final Token method;
+        int depth = -1;
 
         Super(Token keyword, Token method) {
             this.keyword = keyword;
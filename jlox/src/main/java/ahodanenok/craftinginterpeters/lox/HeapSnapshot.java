@@ -0,0 +1,366 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The globals environment and everything reachable from it, written after
+// a prelude has been executed to restore it later without executing it again.
+//
+// The snapshot holds the declarations of the functions in the form written
+// by AstWriter, a table of strings and a table of objects. Each object is
+// written twice: first with the final fields needed to create it, which only
+// refer to objects with lower indexes, then with its variables, fields or methods,
+// which may refer to any object. So restoring creates the objects one by one
+// and then fills them in, cycles included.
+final class HeapSnapshot {
+
+    private static final int MAGIC = 0x4C4F5853; // LOXS
+    private static final int VERSION = 1;
+
+    private static final int OBJECT_ENVIRONMENT = 0;
+    private static final int OBJECT_FUNCTION = 1;
+    private static final int OBJECT_LAMBDA = 2;
+    private static final int OBJECT_CLASS = 3;
+    private static final int OBJECT_INSTANCE = 4;
+    private static final int OBJECT_NATIVE = 5;
+
+    private static final int VALUE_NIL = 0;
+    private static final int VALUE_TRUE = 1;
+    private static final int VALUE_FALSE = 2;
+    private static final int VALUE_NUMBER = 3;
+    private static final int VALUE_STRING = 4;
+    private static final int VALUE_OBJECT = 5;
+
+    private HeapSnapshot() { }
+
+    static void write(Environment globals, Path path) throws IOException {
+        Writer writer = new Writer();
+        int root = writer.id(globals);
+        byte[] contents = writer.writeContents();
+        byte[] headers = writer.writeHeaders();
+        byte[] declarations = new AstWriter().write(writer.declarations);
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(declarations.length);
+            out.write(declarations);
+            writer.writeStrings(out);
+            out.writeInt(writer.objects.size());
+            out.write(headers);
+            out.write(contents);
+            out.writeInt(root);
+        }
+    }
+
+    static Environment read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+
+            return new Reader(buffer).read();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed snapshot: " + path, e);
+        }
+    }
+
+    private static final class Writer {
+
+        final Map<Object, Integer> ids = new IdentityHashMap<>();
+        final List<Object> objects = new ArrayList<>();
+        final Map<Object, Integer> declarationIds = new IdentityHashMap<>();
+        final List<Statement> declarations = new ArrayList<>();
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+
+        // objects referred to by final fields get lower ids, host objects, tasks
+        // and channels can't be written, as they hold Java state
+        int id(Object object) throws IOException {
+            Integer id = ids.get(object);
+            if (id != null) {
+                return id;
+            }
+
+            if (object instanceof Environment environment) {
+                if (environment.parent != null) {
+                    id(environment.parent);
+                }
+            } else if (object instanceof LoxFunction function) {
+                id(function.closure);
+                declarationId(function.declaration, function.declaration);
+            } else if (object instanceof LoxLambda lambda) {
+                id(lambda.closure);
+                declarationId(lambda.declaration, new Statement.Expr(lambda.declaration));
+            } else if (object instanceof LoxClass klass) {
+                if (klass.parent != null) {
+                    id(klass.parent);
+                }
+            } else if (object instanceof LoxInstance instance) {
+                id(instance.klass);
+            } else if (nativeName(object) == null) {
+                throw new IOException("Can't write " + object + " to a snapshot.");
+            }
+
+            id = objects.size();
+            ids.put(object, id);
+            objects.add(object);
+
+            return id;
+        }
+
+        private int declarationId(Object declaration, Statement statement) {
+            Integer id = declarationIds.get(declaration);
+            if (id == null) {
+                id = declarations.size();
+                declarationIds.put(declaration, id);
+                declarations.add(statement);
+            }
+
+            return id;
+        }
+
+        private int stringId(String s) {
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(s, id);
+                strings.add(s);
+            }
+
+            return id;
+        }
+
+        // writing the contents adds the objects they refer to,
+        // so it must be done before writing the headers
+        byte[] writeContents() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = 0; i < objects.size(); i++) {
+                Object object = objects.get(i);
+                if (object instanceof Environment environment) {
+                    out.writeInt(environment.values.size());
+                    for (Map.Entry<String, Object> entry : environment.values.entrySet()) {
+                        out.writeInt(stringId(entry.getKey()));
+                        writeValue(out, Environment.decode(entry.getValue()));
+                    }
+                    out.writeInt(environment.initialized.size());
+                    for (String name : environment.initialized) {
+                        out.writeInt(stringId(name));
+                    }
+                } else if (object instanceof LoxClass klass) {
+                    out.writeInt(klass.methods.size());
+                    for (Map.Entry<String, LoxFunction> entry : klass.methods.entrySet()) {
+                        out.writeInt(stringId(entry.getKey()));
+                        out.writeInt(id(entry.getValue()));
+                    }
+                } else if (object instanceof LoxInstance instance) {
+                    out.writeInt(instance.fields.size());
+                    for (Map.Entry<String, Object> entry : instance.fields.entrySet()) {
+                        out.writeInt(stringId(entry.getKey()));
+                        writeValue(out, Environment.decode(entry.getValue()));
+                    }
+                }
+            }
+            out.flush();
+
+            return bytes.toByteArray();
+        }
+
+        byte[] writeHeaders() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Object object : objects) {
+                if (object instanceof Environment environment) {
+                    out.writeByte(OBJECT_ENVIRONMENT);
+                    out.writeInt(environment.parent != null ? ids.get(environment.parent) : -1);
+                } else if (object instanceof LoxFunction function) {
+                    out.writeByte(OBJECT_FUNCTION);
+                    out.writeInt(declarationIds.get(function.declaration));
+                    out.writeInt(ids.get(function.closure));
+                    out.writeBoolean(function.isInitializer);
+                } else if (object instanceof LoxLambda lambda) {
+                    out.writeByte(OBJECT_LAMBDA);
+                    out.writeInt(declarationIds.get(lambda.declaration));
+                    out.writeInt(ids.get(lambda.closure));
+                } else if (object instanceof LoxClass klass) {
+                    out.writeByte(OBJECT_CLASS);
+                    out.writeInt(stringId(klass.name));
+                    out.writeInt(klass.parent != null ? ids.get(klass.parent) : -1);
+                } else if (object instanceof LoxInstance instance) {
+                    out.writeByte(OBJECT_INSTANCE);
+                    out.writeInt(ids.get(instance.klass));
+                } else {
+                    out.writeByte(OBJECT_NATIVE);
+                    out.writeInt(stringId(nativeName(object)));
+                }
+            }
+            out.flush();
+
+            return bytes.toByteArray();
+        }
+
+        void writeStrings(OutputStream stream) throws IOException {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+        }
+
+        private void writeValue(DataOutputStream out, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(VALUE_NIL);
+            } else if (value instanceof Boolean b) {
+                out.writeByte(b ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Double d) {
+                out.writeByte(VALUE_NUMBER);
+                out.writeDouble(d);
+            } else if (value instanceof String s) {
+                out.writeByte(VALUE_STRING);
+                out.writeInt(stringId(s));
+            } else {
+                out.writeByte(VALUE_OBJECT);
+                out.writeInt(id(value));
+            }
+        }
+
+        private static String nativeName(Object object) {
+            for (Map.Entry<String, LoxCallable> entry : Interpreter.NATIVES.entrySet()) {
+                if (entry.getValue() == object) {
+                    return entry.getKey();
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private List<Statement> declarations;
+        private String[] strings;
+        private Object[] objects;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        Environment read() {
+            int length = buffer.getInt();
+            declarations = new AstReader(buffer.slice(buffer.position(), length)).read();
+            buffer.position(buffer.position() + length);
+
+            strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            objects = new Object[buffer.getInt()];
+            for (int i = 0; i < objects.length; i++) {
+                objects[i] = readHeader();
+            }
+            for (Object object : objects) {
+                readContents(object);
+            }
+
+            Environment globals = (Environment) objects[buffer.getInt()];
+            if (buffer.hasRemaining()) {
+                throw new IllegalStateException("Unexpected data after the snapshot");
+            }
+
+            return globals;
+        }
+
+        private Object readHeader() {
+            int kind = buffer.get();
+            switch (kind) {
+                case OBJECT_ENVIRONMENT -> {
+                    int parent = buffer.getInt();
+                    return parent >= 0 ? new Environment((Environment) objects[parent]) : new Environment();
+                }
+                case OBJECT_FUNCTION -> {
+                    Statement.Function declaration = (Statement.Function) declarations.get(buffer.getInt());
+                    Environment closure = (Environment) objects[buffer.getInt()];
+                    return new LoxFunction(declaration, closure, buffer.get() != 0);
+                }
+                case OBJECT_LAMBDA -> {
+                    Statement.Expr declaration = (Statement.Expr) declarations.get(buffer.getInt());
+                    Environment closure = (Environment) objects[buffer.getInt()];
+                    return new LoxLambda((Expression.Lambda) declaration.expression, closure);
+                }
+                case OBJECT_CLASS -> {
+                    String name = strings[buffer.getInt()];
+                    int parent = buffer.getInt();
+                    return new LoxClass(name, parent >= 0 ? (LoxClass) objects[parent] : null, new HashMap<>());
+                }
+                case OBJECT_INSTANCE -> {
+                    return new LoxInstance((LoxClass) objects[buffer.getInt()]);
+                }
+                case OBJECT_NATIVE -> {
+                    String name = strings[buffer.getInt()];
+                    LoxCallable callable = Interpreter.NATIVES.get(name);
+                    if (callable == null) {
+                        throw new IllegalStateException("Unknown native function: " + name);
+                    }
+                    return callable;
+                }
+                default -> throw new IllegalStateException("Unknown object: " + kind);
+            }
+        }
+
+        private void readContents(Object object) {
+            if (object instanceof Environment environment) {
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    environment.define(strings[buffer.getInt()], readValue());
+                }
+                count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    environment.initialized.add(strings[buffer.getInt()]);
+                }
+            } else if (object instanceof LoxClass klass) {
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    klass.methods.put(strings[buffer.getInt()], (LoxFunction) objects[buffer.getInt()]);
+                }
+            } else if (object instanceof LoxInstance instance) {
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    instance.fields.put(strings[buffer.getInt()], Environment.encode(readValue()));
+                }
+            }
+        }
+
+        private Object readValue() {
+            int kind = buffer.get();
+            return switch (kind) {
+                case VALUE_NIL -> null;
+                case VALUE_TRUE -> true;
+                case VALUE_FALSE -> false;
+                case VALUE_NUMBER -> buffer.getDouble();
+                case VALUE_STRING -> strings[buffer.getInt()];
+                case VALUE_OBJECT -> objects[buffer.getInt()];
+                default -> throw new IllegalStateException("Unknown value: " + kind);
+            };
+        }
+    }
+}
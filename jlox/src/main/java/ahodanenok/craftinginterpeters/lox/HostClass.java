@@ -0,0 +1,253 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+// A Java class exposed to Lox: calling it creates an instance, its public static
+// methods and fields are its properties. The members of a class are looked up and
+// adapted once, the first time the class is used, and each property access caches
+// the member it found, so the next access with the same class skips the lookup.
+final class HostClass implements LoxCallable {
+
+    private static final ClassValue<HostClass> CLASSES = new ClassValue<>() {
+        @Override
+        protected HostClass computeValue(Class<?> type) {
+            return new HostClass(type);
+        }
+    };
+
+    final Class<?> type;
+    private final HostMethod constructor;
+    // methods and fields by name
+    private final Map<String, Object> staticMembers = new HashMap<>();
+    private final Map<String, Object> instanceMembers = new HashMap<>();
+
+    private HostClass(Class<?> type) {
+        this.type = type;
+
+        List<MethodHandle> constructors = new ArrayList<>();
+        if (!Modifier.isAbstract(type.getModifiers())) {
+            for (Constructor<?> constructor : type.getConstructors()) {
+                try {
+                    constructors.add(MethodHandles.publicLookup().unreflectConstructor(constructor));
+                } catch (IllegalAccessException e) {
+                    // not visible outside of its module
+                }
+            }
+        }
+        this.constructor = constructors.isEmpty()
+            ? null
+            : HostMethod.of(type.getSimpleName(), constructors, true);
+
+        // a public class inherits methods of a package-private one through bridges,
+        // the other bridges only repeat methods with a more specific return type
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : type.getMethods()) {
+            String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+            Method previous = methods.get(signature);
+            if (previous == null || previous.isBridge() && !method.isBridge()) {
+                methods.put(signature, method);
+            }
+        }
+
+        Map<String, List<MethodHandle>> staticMethods = new LinkedHashMap<>();
+        Map<String, List<MethodHandle>> instanceMethods = new LinkedHashMap<>();
+        for (Method method : methods.values()) {
+            MethodHandle handle = unreflect(method);
+            if (handle != null) {
+                boolean isStatic = Modifier.isStatic(method.getModifiers());
+                (isStatic ? staticMethods : instanceMethods)
+                    .computeIfAbsent(method.getName(), name -> new ArrayList<>())
+                    .add(handle);
+            }
+        }
+        staticMethods.forEach((name, handles) -> staticMembers.put(name, HostMethod.of(name, handles, true)));
+        instanceMethods.forEach((name, handles) -> instanceMembers.put(name, HostMethod.of(name, handles, false)));
+
+        // a field hides the methods with the same name
+        for (Field field : type.getFields()) {
+            HostField hostField = HostField.of(field);
+            if (hostField != null) {
+                (hostField.isStatic ? staticMembers : instanceMembers).put(field.getName(), hostField);
+            }
+        }
+    }
+
+    static HostClass of(Class<?> type) {
+        return CLASSES.get(type);
+    }
+
+    // A public method of a class which is not accessible, i.e. an iterator implemented
+    // by a private class, is called through a public supertype declaring it.
+    // Returns null if there is no such supertype.
+    private static MethodHandle unreflect(Method method) {
+        Queue<Class<?>> types = new ArrayDeque<>();
+        types.add(method.getDeclaringClass());
+        while (!types.isEmpty()) {
+            Class<?> type = types.remove();
+            try {
+                Method declared = type == method.getDeclaringClass()
+                    ? method
+                    : type.getMethod(method.getName(), method.getParameterTypes());
+                return MethodHandles.publicLookup().unreflect(declared);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                if (type.getSuperclass() != null) {
+                    types.add(type.getSuperclass());
+                }
+                types.addAll(List.of(type.getInterfaces()));
+            }
+        }
+
+        return null;
+    }
+
+    // any number of arguments, they select the constructor
+    @Override
+    public int arity() {
+        return -1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        if (constructor == null) {
+            throw new HostError("Can't create instances of " + type.getName() + ".");
+        }
+
+        return constructor.call(interpreter, arguments);
+    }
+
+    // reads a property of the receiver, or a static one if there is no receiver
+    Object get(Expression.Get site, Object receiver) {
+        Object member;
+        if (site.cache instanceof Site cached && cached.matches(this, receiver == null)) {
+            member = cached.member;
+        } else {
+            member = member(site.name, receiver == null);
+            site.cache = new Site(this, receiver == null, member);
+        }
+
+        if (member instanceof HostField field) {
+            return field.get(receiver);
+        }
+
+        HostMethod method = (HostMethod) member;
+        return method.isStatic ? method : method.bind(receiver);
+    }
+
+    Object set(Expression.Set site, Object receiver, Object value) {
+        Object member;
+        if (site.cache instanceof Site cached && cached.matches(this, receiver == null)) {
+            member = cached.member;
+        } else {
+            member = member(site.name, receiver == null);
+            site.cache = new Site(this, receiver == null, member);
+        }
+
+        if (!(member instanceof HostField field) || field.setter == null) {
+            throw new RuntimeError(site.name,
+                "Can't assign to '" + site.name.lexeme + "'.");
+        }
+
+        field.set(receiver, value);
+        return value;
+    }
+
+    // static members are also accessible through instances
+    private Object member(Token name, boolean isStatic) {
+        Object member = isStatic ? null : instanceMembers.get(name.lexeme);
+        if (member == null) {
+            member = staticMembers.get(name.lexeme);
+        }
+        if (member == null) {
+            throw new RuntimeError(name,
+                "Undefined property '" + name.lexeme + "'.");
+        }
+
+        return member;
+    }
+
+    @Override
+    public String toString() {
+        return "<host class " + type.getName() + ">";
+    }
+
+    // the member found by a property access, immutable, so it's safe
+    // to share it with other threads executing the same program
+    private record Site(HostClass owner, boolean isStatic, Object member) {
+
+        boolean matches(HostClass klass, boolean isStatic) {
+            return owner == klass && this.isStatic == isStatic;
+        }
+    }
+
+    private static final class HostField {
+
+        final boolean isStatic;
+        // (Object)Object, the receiver is ignored for static fields
+        final MethodHandle getter;
+        // (Object, Object)void, null if the field is final
+        final MethodHandle setter;
+
+        private HostField(boolean isStatic, MethodHandle getter, MethodHandle setter) {
+            this.isStatic = isStatic;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        static HostField of(Field field) {
+            boolean isStatic = Modifier.isStatic(field.getModifiers());
+            try {
+                MethodHandle getter = MethodHandles.publicLookup().unreflectGetter(field);
+                MethodHandle setter = Modifier.isFinal(field.getModifiers())
+                    ? null
+                    : MethodHandles.publicLookup().unreflectSetter(field);
+                if (isStatic) {
+                    getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                    if (setter != null) {
+                        setter = MethodHandles.dropArguments(setter, 0, Object.class);
+                    }
+                }
+
+                getter = MethodHandles.filterReturnValue(
+                    getter.asType(MethodType.genericMethodType(1)), HostMethod.TO_LOX);
+                if (setter != null) {
+                    setter = MethodHandles.filterArguments(setter, 1, HostMethod.converter(field.getType()))
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                }
+
+                return new HostField(isStatic, getter, setter);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        Object get(Object receiver) {
+            try {
+                return (Object) getter.invokeExact(receiver);
+            } catch (Throwable e) {
+                throw HostError.of(e);
+            }
+        }
+
+        void set(Object receiver, Object value) {
+            try {
+                setter.invokeExact(receiver, value);
+            } catch (Throwable e) {
+                throw HostError.of(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ahodanenok.craftinginterpreters.lox;
+
+// thrown by calls to the host and reported as a runtime error at the call
+final class HostError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    HostError(String message) {
+        super(message, null, false, false);
+    }
+
+    // exceptions thrown by the host become errors of the script, errors of the JVM are rethrown
+    static RuntimeException of(Throwable e) {
+        if (e instanceof HostError || e instanceof RuntimeError) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+
+        return new HostError(e.getClass().getSimpleName()
+            + (e.getMessage() != null ? ": " + e.getMessage() : ""));
+    }
+}
@@ -0,0 +1,277 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// A public method or constructor of a Java class, callable from Lox with any of
+// its overloads. Each overload is a method handle adapted once, when its class is
+// first used: Lox values are converted to the parameter types and the result back
+// to a Lox value, so a call only selects the overload and invokes the handle.
+final class HostMethod implements LoxCallable {
+
+    private static final MethodHandle TO_REFERENCE;
+    static final MethodHandle TO_LOX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TO_REFERENCE = lookup.findStatic(HostMethod.class, "toReference",
+                MethodType.methodType(Object.class, Object.class, Class.class));
+            TO_LOX = lookup.findStatic(HostObject.class, "toLox",
+                MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final String name;
+    // the overloads taking n arguments are at index n, most specific first
+    private final Overload[][] overloads;
+    final boolean isStatic;
+    private final Object receiver;
+
+    private HostMethod(String name, Overload[][] overloads, boolean isStatic, Object receiver) {
+        this.name = name;
+        this.overloads = overloads;
+        this.isStatic = isStatic;
+        this.receiver = receiver;
+    }
+
+    // handles take the receiver first, unless the methods are static
+    static HostMethod of(String name, List<MethodHandle> handles, boolean isStatic) {
+        List<Overload> all = new ArrayList<>();
+        int maxArity = 0;
+        for (MethodHandle handle : handles) {
+            Overload overload = new Overload(handle, isStatic ? 0 : 1);
+            all.add(overload);
+            maxArity = Math.max(maxArity, overload.parameterTypes.length);
+        }
+        all.sort(Comparator.comparingInt(overload -> overload.rank));
+
+        Overload[][] overloads = new Overload[maxArity + 1][];
+        for (int arity = 0; arity <= maxArity; arity++) {
+            int n = arity;
+            overloads[arity] = all.stream()
+                .filter(overload -> overload.parameterTypes.length == n)
+                .toArray(Overload[]::new);
+        }
+
+        return new HostMethod(name, overloads, isStatic, null);
+    }
+
+    HostMethod bind(Object receiver) {
+        return new HostMethod(name, overloads, isStatic, receiver);
+    }
+
+    // overloads are selected by the number of arguments
+    @Override
+    public int arity() {
+        return -1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Overload overload = select(arguments);
+        int offset = isStatic ? 0 : 1;
+        Object[] args = new Object[offset + arguments.size()];
+        if (!isStatic) {
+            args[0] = receiver;
+        }
+        for (int i = 0; i < arguments.size(); i++) {
+            args[offset + i] = arguments.get(i);
+        }
+
+        try {
+            return (Object) overload.handle.invokeExact(args);
+        } catch (Throwable e) {
+            throw HostError.of(e);
+        }
+    }
+
+    private Overload select(List<Object> arguments) {
+        int arity = arguments.size();
+        Overload[] candidates = arity < overloads.length ? overloads[arity] : new Overload[0];
+        if (candidates.length == 1) {
+            return candidates[0];
+        }
+
+        for (Overload candidate : candidates) {
+            if (candidate.accepts(arguments)) {
+                return candidate;
+            }
+        }
+
+        if (candidates.length == 0) {
+            throw new HostError(String.format("'%s' doesn't take %d arguments.", name, arity));
+        }
+        throw new HostError(String.format("No overload of '%s' accepts the arguments.", name));
+    }
+
+    @Override
+    public String toString() {
+        return "<host fn " + name + ">";
+    }
+
+    // adapts a handle to convert its parameters from Lox values and its result
+    // to a Lox value, the receiver, if any, is only cast to its type
+    static MethodHandle adapt(MethodHandle handle, int receivers) {
+        MethodType type = handle.type();
+        MethodHandle[] filters = new MethodHandle[type.parameterCount() - receivers];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = converter(type.parameterType(receivers + i));
+        }
+        handle = MethodHandles.filterArguments(handle, receivers, filters);
+        handle = handle.asType(MethodType.genericMethodType(type.parameterCount()));
+        return MethodHandles.filterReturnValue(handle, TO_LOX);
+    }
+
+    // a handle converting a Lox value to the type
+    static MethodHandle converter(Class<?> type) {
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        try {
+            String name = switch (primitive.getName()) {
+                case "double" -> "toDouble";
+                case "float" -> "toFloat";
+                case "long" -> "toLong";
+                case "int" -> "toInt";
+                case "short" -> "toShort";
+                case "byte" -> "toByte";
+                case "char" -> "toChar";
+                case "boolean" -> "toBoolean";
+                default -> null;
+            };
+            MethodHandle converter = name != null
+                ? MethodHandles.lookup().findStatic(HostMethod.class, name,
+                    MethodType.methodType(primitive, Object.class))
+                : MethodHandles.insertArguments(TO_REFERENCE, 1, type);
+            return converter.asType(MethodType.methodType(type, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Double n) {
+            return n;
+        }
+
+        throw new HostError("Argument must be a number.");
+    }
+
+    private static double toDouble(Object value) {
+        return number(value);
+    }
+
+    private static float toFloat(Object value) {
+        return (float) number(value);
+    }
+
+    private static long toLong(Object value) {
+        return (long) number(value);
+    }
+
+    private static int toInt(Object value) {
+        return (int) number(value);
+    }
+
+    private static short toShort(Object value) {
+        return (short) number(value);
+    }
+
+    private static byte toByte(Object value) {
+        return (byte) number(value);
+    }
+
+    private static char toChar(Object value) {
+        if (value instanceof String s && s.length() == 1) {
+            return s.charAt(0);
+        }
+
+        throw new HostError("Argument must be a single character string.");
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean b) {
+            return b;
+        }
+
+        throw new HostError("Argument must be a boolean.");
+    }
+
+    private static Object toReference(Object value, Class<?> type) {
+        value = HostObject.toJava(value);
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+
+        throw new HostError("Argument must be " + type.getSimpleName() + ".");
+    }
+
+    private static final class Overload {
+
+        final MethodHandle handle;
+        final Class<?>[] parameterTypes;
+        // lower is preferred, i.e. int before double, String before Object
+        final int rank;
+
+        Overload(MethodHandle handle, int receivers) {
+            List<Class<?>> types = handle.type().parameterList();
+            this.parameterTypes = types.subList(receivers, types.size()).toArray(new Class<?>[0]);
+            this.handle = adapt(handle, receivers)
+                .asSpreader(Object[].class, types.size())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+            this.rank = Arrays.stream(parameterTypes).mapToInt(Overload::rank).sum();
+        }
+
+        boolean accepts(List<Object> arguments) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (!accepts(parameterTypes[i], arguments.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        // whole numbers select integer overloads, the others floating point ones
+        private static boolean accepts(Class<?> type, Object value) {
+            Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+            if (primitive == boolean.class) {
+                return value instanceof Boolean;
+            } else if (primitive == char.class) {
+                return value instanceof String s && s.length() == 1;
+            } else if (primitive.isPrimitive()) {
+                return value instanceof Double n && switch (primitive.getName()) {
+                    case "int" -> n == (int) (double) n;
+                    case "long" -> n == (long) (double) n;
+                    case "short" -> n == (short) (double) n;
+                    case "byte" -> n == (byte) (double) n;
+                    case "float" -> n == (float) (double) n;
+                    default -> true;
+                };
+            }
+
+            value = HostObject.toJava(value);
+            return value == null || type.isInstance(value);
+        }
+
+        private static int rank(Class<?> type) {
+            Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+            return switch (primitive.getName()) {
+                case "boolean", "int" -> 0;
+                case "long" -> 1;
+                case "double" -> 2;
+                case "float" -> 3;
+                case "short" -> 4;
+                case "byte" -> 5;
+                case "char" -> 6;
+                default -> type == Object.class ? 10 : type.isInterface() ? 2 : 1;
+            };
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.Objects;
+
+// a Java object exposed to Lox, its public methods and fields are its properties
+final class HostObject {
+
+    final Object target;
+    final HostClass klass;
+
+    HostObject(Object target) {
+        this.target = target;
+        this.klass = HostClass.of(target.getClass());
+    }
+
+    // Numbers become Lox numbers, characters become strings, classes and other
+    // objects are exposed as host classes and objects, Lox values stay as they are
+    static Object toLox(Object value) {
+        if (value == null || value instanceof Double || value instanceof String
+                || value instanceof Boolean || value instanceof LoxCallable
+                || value instanceof LoxInstance || value instanceof HostObject) {
+            return value;
+        } else if (value instanceof Number n) {
+            return n.doubleValue();
+        } else if (value instanceof Character c) {
+            return c.toString();
+        } else if (value instanceof Class<?> type) {
+            return HostClass.of(type);
+        }
+
+        return new HostObject(value);
+    }
+
+    // the Java object behind a host class or object
+    static Object toJava(Object value) {
+        if (value instanceof HostObject host) {
+            return host.target;
+        } else if (value instanceof HostClass klass) {
+            return klass.type;
+        }
+
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof HostObject other && Objects.equals(target, other.target);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(target);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(target);
+    }
+}
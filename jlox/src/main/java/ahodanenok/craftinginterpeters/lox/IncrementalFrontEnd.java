@@ -0,0 +1,303 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Scans, parses and resolves a source which is edited over time,
+// keeping the results for the top-level declarations the edit didn't touch.
+//
+// The source is split into units: a top-level declaration together with
+// the whitespace and comments before it. The last unit holds what follows
+// the last declaration. Top-level declarations are resolved independently
+// from each other, so only the reparsed units are resolved again.
+// Editors use it through LoxDocument.
+final class IncrementalFrontEnd {
+
+    private String source;
+    private List<Unit> units;
+
+    IncrementalFrontEnd() {
+        this.source = "";
+        this.units = List.of(new Unit(
+            0, 0, 1, 1, List.of(), new int[0], null,
+            new Diagnostics(), new Diagnostics(), new Diagnostics()));
+    }
+
+    void update(String newSource) {
+        if (newSource.equals(source)) {
+            return;
+        }
+
+        String oldSource = source;
+        int prefix = commonPrefix(oldSource, newSource);
+        int suffix = commonSuffix(oldSource, newSource, prefix);
+        int delta = newSource.length() - oldSource.length();
+        int endUnit = units.size() - 1;
+
+        // The parser decides where a declaration ends by looking
+        // at the next token, and the scanner looks at most two characters
+        // past the end of a token, so a unit is kept only if the first token
+        // of the next unit ends before the edit with that margin.
+        int head = 0;
+        while (head + 1 < endUnit && firstTokenEnd(units.get(head + 1)) + 2 <= prefix) {
+            head++;
+        }
+
+        int tail = head;
+        while (tail <= endUnit && units.get(tail).start < oldSource.length() - suffix) {
+            tail++;
+        }
+
+        // Scanning continues until it stops at the start of a unit
+        // which is located in the unchanged text, from there on
+        // the tokens are the same as before, but their lines could move.
+        int dirtyStart = units.get(head).start;
+        Scanner scanner = new Scanner(newSource, dirtyStart, units.get(head).line, new Diagnostics());
+        List<Token> dirtyTokens;
+        while (true) {
+            int target = tail <= endUnit ? units.get(tail).start + delta : newSource.length();
+            dirtyTokens = scanner.scanUntil(target);
+            if (tail > endUnit) {
+                break;
+            }
+
+            int tokensEnd = dirtyTokens.isEmpty()
+                ? dirtyStart
+                : tokenEnd(scanner.offset(dirtyTokens.size() - 1), dirtyTokens.get(dirtyTokens.size() - 1));
+            if (scanner.position() == target && tokensEnd == target) {
+                break;
+            }
+
+            tail++;
+            while (tail <= endUnit && units.get(tail).start + delta < scanner.position()) {
+                tail++;
+            }
+        }
+        int lineDelta = tail <= endUnit ? scanner.line() - units.get(tail).line : 0;
+
+        List<Token> tokens = new ArrayList<>(dirtyTokens);
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < dirtyTokens.size(); i++) {
+            offsets.add(scanner.offset(i));
+        }
+        int[] tailStarts = new int[units.size() + 1];
+        for (int i = tail; i <= endUnit; i++) {
+            Unit unit = units.get(i);
+            tailStarts[i] = tokens.size();
+            for (int j = 0; j < unit.tokens.size(); j++) {
+                tokens.add(moveToken(unit.tokens.get(j), lineDelta));
+                offsets.add(unit.start + delta + unit.offsets[j]);
+            }
+        }
+        tailStarts[units.size()] = tokens.size();
+        int endLine = tail <= endUnit ? units.get(endUnit).endLine + lineDelta : scanner.line();
+        tokens.add(new Token(TokenType.EOF, "", null, endLine));
+
+        List<Unit> result = new ArrayList<>(units.subList(0, head));
+        UnitReporter reporter = new UnitReporter();
+        Parser parser = new Parser(tokens, reporter).precedenceClimbing(true);
+        int reused = tail;
+        while (true) {
+            int first = parser.position();
+            while (reused <= endUnit && tailStarts[reused] < first) {
+                reused++;
+            }
+            if (lineDelta == 0 && reused < endUnit && tailStarts[reused] == first) {
+                break;
+            }
+            if (!parser.hasMoreDeclarations()) {
+                break;
+            }
+
+            Diagnostics parseErrors = new Diagnostics();
+            reporter.target = parseErrors;
+            Statement statement = parser.parseDeclaration();
+            int last = parser.position();
+
+            int start = result.isEmpty() ? 0 : result.get(result.size() - 1).end;
+            int line = result.isEmpty() ? 1 : result.get(result.size() - 1).endLine;
+            int end = tokenEnd(offsets.get(last - 1), tokens.get(last - 1));
+            int[] unitOffsets = new int[last - first];
+            for (int i = first; i < last; i++) {
+                unitOffsets[i - first] = offsets.get(i) - start;
+            }
+
+            Diagnostics scanErrors;
+            if (reused < endUnit && tailStarts[reused] == first && tailStarts[reused + 1] == last) {
+                scanErrors = units.get(reused).scanErrors.withLineOffset(lineDelta);
+            } else {
+                scanErrors = scanErrors(newSource, start, end, line);
+            }
+
+            // resolver expects a well-formed tree, its errors
+            // aren't reported anyway if there are parse errors
+            Diagnostics resolveErrors = new Diagnostics();
+            if (!parseErrors.hasErrors()) {
+                new Resolver(resolveErrors).resolve(List.of(statement));
+            }
+
+            result.add(new Unit(
+                start, end, line, tokens.get(last - 1).line,
+                new ArrayList<>(tokens.subList(first, last)), unitOffsets,
+                statement, scanErrors, parseErrors, resolveErrors));
+        }
+
+        if (parser.hasMoreDeclarations()) {
+            for (int i = reused; i <= endUnit; i++) {
+                result.add(units.get(i).moved(delta));
+            }
+        } else {
+            int start = result.isEmpty() ? 0 : result.get(result.size() - 1).end;
+            int line = result.isEmpty() ? 1 : result.get(result.size() - 1).endLine;
+            Diagnostics scanErrors;
+            if (tail <= endUnit && units.get(endUnit).start + delta == start) {
+                scanErrors = units.get(endUnit).scanErrors.withLineOffset(lineDelta);
+            } else {
+                scanErrors = scanErrors(newSource, start, newSource.length(), line);
+            }
+
+            result.add(new Unit(
+                start, newSource.length(), line, endLine, List.of(), new int[0], null,
+                scanErrors, new Diagnostics(), new Diagnostics()));
+        }
+
+        this.source = newSource;
+        this.units = result;
+    }
+
+    // same as the result of Parser.parse()
+    List<Statement> program() {
+        List<Statement> program = new ArrayList<>(units.size() - 1);
+        for (int i = 0; i < units.size() - 1; i++) {
+            program.add(units.get(i).statement);
+        }
+
+        return program;
+    }
+
+    boolean hadError() {
+        for (Unit unit : units) {
+            if (unit.scanErrors.hasErrors()
+                    || unit.parseErrors.hasErrors()
+                    || unit.resolveErrors.hasErrors()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // reports errors in the same order as scanning, parsing
+    // and resolving the whole source again would do
+    void reportErrors(ErrorReporter reporter) {
+        boolean hadError = false;
+        for (Unit unit : units) {
+            unit.scanErrors.reportTo(reporter);
+            hadError |= unit.scanErrors.hasErrors();
+        }
+        for (Unit unit : units) {
+            unit.parseErrors.reportTo(reporter);
+            hadError |= unit.parseErrors.hasErrors();
+        }
+        if (hadError) {
+            return;
+        }
+
+        for (Unit unit : units) {
+            unit.resolveErrors.reportTo(reporter);
+        }
+    }
+
+    private Diagnostics scanErrors(String source, int start, int end, int line) {
+        Diagnostics diagnostics = new Diagnostics();
+        new Scanner(source, start, line, diagnostics).scanUntil(end);
+        return diagnostics;
+    }
+
+    private static int firstTokenEnd(Unit unit) {
+        return tokenEnd(unit.start + unit.offsets[0], unit.tokens.get(0));
+    }
+
+    private static int tokenEnd(int offset, Token token) {
+        return offset + token.lexeme.length();
+    }
+
+    private static Token moveToken(Token token, int lineDelta) {
+        if (lineDelta == 0) {
+            return token;
+        }
+
+        return new Token(token.type, token.lexeme, token.literal, token.line + lineDelta);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int commonSuffix(String a, String b, int prefix) {
+        int n = Math.min(a.length(), b.length()) - prefix;
+        int i = 0;
+        while (i < n && a.charAt(a.length() - i - 1) == b.charAt(b.length() - i - 1)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static final class UnitReporter implements ErrorReporter {
+
+        Diagnostics target;
+
+        @Override
+        public void error(int line, String msg) {
+            target.error(line, msg);
+        }
+
+        @Override
+        public void error(Token token, String msg) {
+            target.error(token, msg);
+        }
+    }
+
+    private static final class Unit {
+
+        final int start;
+        final int end;
+        final int line;
+        final int endLine;
+        final List<Token> tokens;
+        // token offsets relative to the start of the unit
+        final int[] offsets;
+        final Statement statement;
+        final Diagnostics scanErrors;
+        final Diagnostics parseErrors;
+        final Diagnostics resolveErrors;
+
+        Unit(int start, int end, int line, int endLine,
+                List<Token> tokens, int[] offsets, Statement statement,
+                Diagnostics scanErrors, Diagnostics parseErrors, Diagnostics resolveErrors) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.endLine = endLine;
+            this.tokens = tokens;
+            this.offsets = offsets;
+            this.statement = statement;
+            this.scanErrors = scanErrors;
+            this.parseErrors = parseErrors;
+            this.resolveErrors = resolveErrors;
+        }
+
+        Unit moved(int delta) {
+            return new Unit(
+                start + delta, end + delta, line, endLine, tokens, offsets,
+                statement, scanErrors, parseErrors, resolveErrors);
+        }
+    }
+}
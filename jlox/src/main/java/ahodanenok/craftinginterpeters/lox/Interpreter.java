@@ -1,21 +1,27 @@
 package ahodanenok.craftinginterpreters.lox;
 
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void> {
 
-    Environment globals = new Environment();
-    private Environment environment = globals;
-    private Map<Expression, Integer> locals = new HashMap<>();
-    private LinkedList<Boolean> loopBroken = new LinkedList<>();
-
-    Interpreter() {
-        globals.define("clock", new LoxCallable() {
+    // shared by all global environments, so they can be told apart from other values
+    static final Map<String, LoxCallable> NATIVES = new LinkedHashMap<>();
+    static {
+        NATIVES.put("clock", new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -31,20 +37,250 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
                 return "<native fn>";
             }
         });
+        Tasks.defineNatives(NATIVES);
+    }
+
+    private static final VarHandle FRAME;
+    static {
+        try {
+            FRAME = MethodHandles.lookup().findVarHandle(Interpreter.class, "frame", Profiler.Frame.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final PrintStream out;
+    final ErrorReporter reporter;
+    Environment globals;
+    // imported module paths are relative to it
+    Path directory = Path.of("");
+    // the modules executed by this interpreter and its tasks
+    final Map<Path, Modules.Execution> modules;
+    // the tasks started by this interpreter and its tasks, which are running
+    // or failed and haven't been joined
+    private final Set<LoxTask> tasks;
+    // the interpreter which spawned the task this one runs, null if none
+    private final Interpreter parent;
+    private Environment environment;
+    private LinkedList<Boolean> loopBroken = new LinkedList<>();
+    private volatile Budget budget;
+    final RuntimeMetrics metrics;
+    final RuntimeMetrics.Counters counters;
+    // counted down at loop iterations and calls, the budget is asked for more below zero
+    private int steps;
+    private int calls;
+    // the steps and calls, and the bytes taken from the budget at once
+    private final int batch;
+    private final long memoryBatch;
+    // bytes left to allocate, the allocations are counted down without checking it,
+    // a negative value is only noticed at the next step, except for strings which
+    // can grow large at once
+    private long memory;
+    // null if not profiled
+    private Profiler profiler;
+    // the function being called, null if not executing any code, it's published
+    // to the profiler with a release write, cheaper than a volatile one on each call
+    private Profiler.Frame frame;
+    // the frame of the parent interpreter this one was created at, the calls it makes
+    // are sampled as made from there
+    private final Profiler.Frame origin;
+
+    Interpreter() {
+        this(System.out, Lox.reporter);
+    }
+
+    Interpreter(PrintStream out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        this.globals = new Environment();
+        this.environment = globals;
+        this.modules = new ConcurrentHashMap<>();
+        this.tasks = ConcurrentHashMap.newKeySet();
+        this.parent = null;
+        this.budget = new Budget();
+        this.batch = Budget.BATCH;
+        this.memoryBatch = Budget.MEMORY_BATCH;
+        this.metrics = new RuntimeMetrics();
+        this.counters = metrics.newCounters();
+        this.origin = null;
+        defineNatives(globals);
+    }
+
+    // an interpreter for a task spawned on another thread,
+    // it shares the globals and the output with the parent
+    Interpreter(Interpreter parent) {
+        this.out = parent.out;
+        this.reporter = parent.reporter;
+        this.globals = parent.globals;
+        this.environment = globals;
+        this.directory = parent.directory;
+        this.modules = parent.modules;
+        this.tasks = parent.tasks;
+        this.parent = parent;
+        this.budget = parent.budget;
+        this.batch = Budget.TASK_BATCH;
+        this.memoryBatch = Budget.TASK_MEMORY_BATCH;
+        this.metrics = parent.metrics;
+        this.counters = metrics.newCounters();
+        this.origin = parent.frame();
+        if (parent.profiler != null) {
+            profile(parent.profiler);
+        }
+    }
+
+    static void defineNatives(Environment globals) {
+        NATIVES.forEach(globals::define);
+    }
+
+    // replaces the globals, i.e. with the ones restored from a snapshot
+    void useGlobals(Environment globals) {
+        this.globals = globals;
+        this.environment = globals;
+    }
+
+    // an interpreter of a task calls it when the task is done
+    void retire() {
+        metrics.retire(counters);
+        budget.giveBack(Math.max(steps, 0), Math.max(calls, 0), Math.max(memory, 0));
+        steps = 0;
+        calls = 0;
+        memory = 0;
+    }
+
+    // the calling thread runs a spawned task until it exits, see Budget
+    void enter() {
+        budget.enter();
+    }
+
+    void exit() {
+        budget.exit();
+    }
+
+    void track(LoxTask task) {
+        tasks.add(task);
+    }
+
+    void untrack(LoxTask task) {
+        tasks.remove(task);
+    }
+
+    // Waits for the tasks started by the code executed so far, and for the ones they
+    // start, so none of them outlives the run. The runtime errors of the tasks nobody
+    // joined are reported. When the run failed, the tasks are cancelled first and
+    // their errors are not reported, as most of them are the cancellation.
+    void awaitTasks(boolean cancel) {
+        if (cancel) {
+            budget.cancel();
+        }
+
+        while (!tasks.isEmpty()) {
+            for (LoxTask task : tasks) {
+                RuntimeError error = task.await();
+                // joined by another task meanwhile if it's not tracked anymore
+                if (tasks.remove(task) && error != null && !cancel) {
+                    counters.runtimeErrors++;
+                    reporter.runtimeError(error.token, error.getMessage());
+                }
+            }
+        }
+    }
+
+    void profile(Profiler profiler) {
+        this.profiler = profiler;
+        profiler.register(this);
+    }
+
+    // limits the code executed after this, until it's replaced with another budget
+    void limit(Budget budget) {
+        this.budget = budget;
+        this.steps = 0;
+        this.calls = 0;
+        this.memory = 0;
+    }
+
+    // can be called from any thread, the code running fails at its next loop iteration or call
+    void cancel() {
+        budget.cancel();
+    }
+
+    private void step(Token token) {
+        if (--steps < 0 || memory < 0) {
+            refill(token);
+        }
+    }
+
+    private void refill(Token token) {
+        if (steps < 0) {
+            steps = budget.takeSteps(token, batch) - 1;
+        }
+        if (memory < 0) {
+            memory += budget.takeMemory(token, -memory, memoryBatch);
+        }
+    }
+
+    void allocate(long bytes) {
+        memory -= bytes;
     }
 
     void interpret(List<Statement> program) {
+        Profiler.Frame previousFrame = frame;
         try {
+            if (profiler != null) {
+                setFrame(new Profiler.Frame("<script>", previousFrame));
+            }
             for (Statement statement : program) {
                 execute(statement);
             }
         } catch (RuntimeError e) {
-            Lox.runtimeError(e.token, e.getMessage());
+            counters.runtimeErrors++;
+            reporter.runtimeError(e.token, e.getMessage());
+        } finally {
+            setFrame(previousFrame);
         }
     }
 
-    void resolve(Expression expression, int distance) {
-        locals.put(expression, distance);
+    // read by the profiler from another thread
+    Profiler.Frame frame() {
+        return (Profiler.Frame) FRAME.getAcquire(this);
+    }
+
+    private void setFrame(Profiler.Frame frame) {
+        FRAME.setRelease(this, frame);
+    }
+
+    // calls a function, recording it if enabled
+    Object call(LoxCallable callable, List<Object> arguments) {
+        counters.calls++;
+        if (!Events.CALL.isEnabled()) {
+            return callProfiled(callable, arguments);
+        }
+
+        Events.Call event = new Events.Call();
+        event.begin();
+        try {
+            return callProfiled(callable, arguments);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.function = Profiler.label(callable);
+                event.commit();
+            }
+        }
+    }
+
+    // calls a function, pushing it on the profiled stack
+    private Object callProfiled(LoxCallable callable, List<Object> arguments) {
+        if (profiler == null) {
+            return callable.call(this, arguments);
+        }
+
+        Profiler.Frame previousFrame = frame;
+        try {
+            setFrame(new Profiler.Frame(callable, previousFrame != null ? previousFrame : origin));
+            return callable.call(this, arguments);
+        } finally {
+            setFrame(previousFrame);
+        }
     }
 
     @Override
@@ -56,7 +292,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
     @Override
     public Void visitPrintStatement(Statement.Print statement) {
         Object value = evaluate(statement.expression);
-        System.out.println(stringify(value));
+        out.println(stringify(value));
         return null;
     }
 
@@ -66,6 +302,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
         if (statement.initializer != null) {
             value = evaluate(statement.initializer);
         }
+        allocate(Budget.ENTRY_SIZE);
         environment.define(statement.name.lexeme, value);
         if (statement.initializer != null) {
             environment.markInitialized(statement.name.lexeme);
@@ -76,6 +313,8 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
 
     @Override
     public Void visitBlockStatement(Statement.Block statement) {
+        allocate(Budget.ENVIRONMENT_SIZE);
+        counters.environments++;
         executeBlock(statement.statements, new Environment(environment));
         return null;
     }
@@ -107,6 +346,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
         loopBroken.push(false);
         try {
             while (isTruthy(evaluate(statement.condition)) && !loopBroken.peek()) {
+                step(statement.keyword);
                 execute(statement.body);
             }
         } finally {
@@ -126,6 +366,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
 
     @Override
     public Void visitFunctionStatement(Statement.Function statement) {
+        allocate(Budget.FUNCTION_SIZE + Budget.ENTRY_SIZE);
         LoxFunction function = new LoxFunction(statement, environment, false);
         environment.define(statement.name.lexeme, function);
         return null;
@@ -154,6 +395,8 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
 
         environment.define(statement.name.lexeme, null);
         if (statement.parent != null) {
+            allocate(Budget.ENVIRONMENT_SIZE + Budget.ENTRY_SIZE);
+            counters.environments++;
             environment = new Environment(environment);
             environment.define("super", parent);
         }
@@ -173,6 +416,127 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
         return null;
     }
 
+    @Override
+    public Void visitImportStatement(Statement.Import statement) {
+        Modules.Module module = Modules.get(directory.resolve((String) statement.path.literal));
+        environment.defineAll(module.execute(this, statement.path));
+        return null;
+    }
+
+    boolean descendsFrom(Interpreter ancestor) {
+        for (Interpreter interpreter = this; interpreter != null; interpreter = interpreter.parent) {
+            if (interpreter == ancestor) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // executes the top-level code of a module in its own globals
+    void executeModule(List<Statement> program, Environment moduleGlobals, Path moduleDirectory) {
+        Path previousDirectory = directory;
+        try {
+            directory = moduleDirectory;
+            executeBlock(program, moduleGlobals);
+        } finally {
+            directory = previousDirectory;
+        }
+    }
+
+    // The range is split into chunks run on the fork/join pool, each by its own
+    // interpreter, in an environment with the loop variable and private copies of
+    // the reduction variables. The copies are combined in the order of the chunks.
+    @Override
+    public Void visitParallelForStatement(Statement.ParallelFor statement) {
+        Object from = evaluate(statement.from);
+        Object to = evaluate(statement.to);
+        if (!(from instanceof Double start) || !(to instanceof Double end)) {
+            throw new RuntimeError(statement.keyword, "Range of a parallel loop must be numbers.");
+        }
+
+        long count = Math.max(0, (long) Math.ceil(end - start));
+        int chunks = (int) Math.min(count, Tasks.POOL.getParallelism() * 4L);
+        Object[][] partials = new Object[chunks][];
+        Environment enclosing = environment;
+        List<RecursiveAction> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int chunk = i;
+            long first = count * chunk / chunks;
+            long last = count * (chunk + 1) / chunks;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    partials[chunk] = executeChunk(statement, enclosing, start, first, last);
+                }
+            });
+        }
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == Tasks.POOL) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            Tasks.POOL.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        for (int i = 0; i < statement.reductions.size(); i++) {
+            Expression.Variable reduction = statement.reductions.get(i);
+            Token operator = statement.operators.get(i);
+            Object value = lookupVariable(reduction.name, reduction.depth);
+            for (Object[] partial : partials) {
+                checkNumberOperands(operator, value, partial[i]);
+                value = operator.type == TokenType.PLUS
+                    ? (double) value + (double) partial[i]
+                    : (double) value * (double) partial[i];
+            }
+
+            if (reduction.depth >= 0) {
+                environment.assignAt(reduction.depth, reduction.name, value);
+            } else {
+                environment.globals.assign(reduction.name, value);
+            }
+        }
+
+        return null;
+    }
+
+    // returns the values of the reduction variables after the iterations
+    private Object[] executeChunk(Statement.ParallelFor statement, Environment enclosing,
+            double start, long first, long last) {
+        Interpreter interpreter = new Interpreter(this);
+        Environment scope = new Environment(enclosing);
+        // the reduction variables and the loop variable
+        interpreter.allocate(Budget.ENVIRONMENT_SIZE + Budget.ENTRY_SIZE * (statement.reductions.size() + 1L));
+        interpreter.counters.environments++;
+        for (int i = 0; i < statement.reductions.size(); i++) {
+            scope.define(statement.reductions.get(i).name.lexeme,
+                statement.operators.get(i).type == TokenType.PLUS ? 0.0 : 1.0);
+        }
+
+        List<Statement> body = List.of(statement.body);
+        // sampled as the code of the function containing the loop
+        interpreter.setFrame(interpreter.origin);
+        try {
+            for (long i = first; i < last; i++) {
+                interpreter.step(statement.keyword);
+                scope.define(statement.variable.lexeme, start + i);
+                interpreter.executeBlock(body, scope);
+            }
+        } finally {
+            interpreter.setFrame(null);
+            interpreter.retire();
+        }
+
+        Object[] partial = new Object[statement.reductions.size()];
+        for (int i = 0; i < partial.length; i++) {
+            partial[i] = scope.getAt(0, statement.reductions.get(i).name.lexeme);
+        }
+        return partial;
+    }
+
     @Override
     public Object visitLiteralExpression(Expression.Literal expression) {
         return expression.value;
@@ -224,6 +588,10 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
                 }
 
                 if (left instanceof String a && right instanceof String b) {
+                    allocate(Budget.stringSize(a) + Budget.stringSize(b) - 40);
+                    if (memory < 0) {
+                        refill(expression.operator);
+                    }
                     yield a + b;
                 }
                 // conflicts with the test suite
@@ -264,26 +632,24 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
 
     @Override
     public Object visitVariableExpression(Expression.Variable expression) {
-        return lookupVariable(expression.name, expression);
+        return lookupVariable(expression.name, expression.depth);
     }
 
-    private Object lookupVariable(Token name, Expression expression) {
-        Integer distance = locals.get(expression);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookupVariable(Token name, int depth) {
+        if (depth >= 0) {
+            return environment.getAt(depth, name.lexeme);
         } else {
-            return globals.get(name);
+            return environment.globals.get(name);
         }
     }
 
     @Override
     public Object visitAssignExpression(Expression.Assign expression) {
         Object value = evaluate(expression.expression);
-        Integer distance = locals.get(expression);
-        if (distance != null) {
-            environment.assignAt(distance, expression.name, value);
+        if (expression.depth >= 0) {
+            environment.assignAt(expression.depth, expression.name, value);
         } else {
-            globals.assign(expression.name, value);
+            environment.globals.assign(expression.name, value);
         }
         environment.markInitialized(expression.name.lexeme);
         return value;
@@ -316,7 +682,8 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
         }
 
         if (callee instanceof LoxCallable callable) {
-            if (callable.arity() != arguments.size()) {
+            // host methods take any number of arguments, they select the overload
+            if (callable.arity() != arguments.size() && callable.arity() >= 0) {
                 throw new RuntimeError(expression.paren,
                     String.format(
                         "Expected %d arguments but got %d.",
@@ -324,7 +691,21 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
                         arguments.size()));
             }
 
-            return callable.call(this, arguments);
+            // the environment of a function or of an initializer with a new instance
+            allocate(Budget.ENVIRONMENT_SIZE + Budget.ENTRY_SIZE * arguments.size()
+                + (callable instanceof LoxClass ? Budget.INSTANCE_SIZE : 0));
+            step(expression.paren);
+            if (--calls < 0) {
+                calls = budget.takeCalls(expression.paren, batch) - 1;
+            }
+
+            try {
+                return call(callable, arguments);
+            } catch (HostError e) {
+                // a wait interrupted by the budget fails with its error
+                budget.check(expression.paren);
+                throw new RuntimeError(expression.paren, e.getMessage());
+            }
         }
 
         throw new RuntimeError(expression.paren,
@@ -333,6 +714,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
 
     @Override
     public Object visitLambdaExpression(Expression.Lambda expression) {
+        allocate(Budget.FUNCTION_SIZE);
         return new LoxLambda(expression, environment);
     }
 
@@ -340,7 +722,17 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
     public Object visitGetExpression(Expression.Get expression) {
         Object object = evaluate(expression.object);
         if (object instanceof LoxInstance instance) {
-            return instance.get(expression.name);
+            Object value = instance.get(expression.name);
+            // a method bound to the instance
+            if (value instanceof LoxFunction) {
+                allocate(Budget.ENVIRONMENT_SIZE + Budget.ENTRY_SIZE + Budget.FUNCTION_SIZE);
+                counters.environments++;
+            }
+            return value;
+        } else if (object instanceof HostObject host) {
+            return getHostProperty(expression, host.klass, host.target);
+        } else if (object instanceof HostClass klass) {
+            return getHostProperty(expression, klass, null);
         }
 
         throw new RuntimeError(expression.name,
@@ -352,21 +744,43 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
         Object object = evaluate(expression.object);
         if (object instanceof LoxInstance instance) {
             Object value = evaluate(expression.value);
-            instance.set(expression.name, value);
+            if (instance.set(expression.name, value)) {
+                allocate(Budget.ENTRY_SIZE);
+            }
             return value;
+        } else if (object instanceof HostObject host) {
+            return setHostProperty(expression, host.klass, host.target, evaluate(expression.value));
+        } else if (object instanceof HostClass klass) {
+            return setHostProperty(expression, klass, null, evaluate(expression.value));
         }
 
         throw new RuntimeError(expression.name, "Only instances have fields.");
     }
 
+    private Object getHostProperty(Expression.Get expression, HostClass klass, Object receiver) {
+        try {
+            return klass.get(expression, receiver);
+        } catch (HostError e) {
+            throw new RuntimeError(expression.name, e.getMessage());
+        }
+    }
+
+    private Object setHostProperty(Expression.Set expression, HostClass klass, Object receiver, Object value) {
+        try {
+            return klass.set(expression, receiver, value);
+        } catch (HostError e) {
+            throw new RuntimeError(expression.name, e.getMessage());
+        }
+    }
+
     @Override
     public Object visitThisExpression(Expression.This expression) {
-        return lookupVariable(expression.keyword, expression);
+        return lookupVariable(expression.keyword, expression.depth);
     }
 
     @Override
     public Object visitSuperExpression(Expression.Super expression) {
-        int distance = locals.get(expression);
+        int distance = expression.depth;
         LoxClass parent = (LoxClass) environment.getAt(distance, "super");
         LoxInstance object =
             (LoxInstance) environment.getAt(distance - 1, "this");
@@ -376,6 +790,9 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
                 "Undefined property '" + expression.method.lexeme + "'.");
         }
 
+        // a method bound to the instance
+        allocate(Budget.ENVIRONMENT_SIZE + Budget.ENTRY_SIZE + Budget.FUNCTION_SIZE);
+        counters.environments++;
         return method.bind(object);
     }
 
@@ -388,6 +805,7 @@ class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void>
             return;
         }
 
+        counters.statements++;
         statement.accept(this);
     }
 
@@ -0,0 +1,92 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Body of a function which is parsed and resolved only when it is used
+// for the first time, usually on the first call of the function.
+// Until then only the tokens between the braces are kept.
+final class LazyFunctionBody extends AbstractList<Statement> {
+
+    private final Token name;
+    private final List<Token> tokens;
+    private final ErrorReporter reporter;
+    private final boolean precedenceClimbing;
+    private BiConsumer<List<Statement>, ErrorReporter> resolver;
+    private volatile List<Statement> statements;
+    private boolean failed;
+
+    // tokens of the body including its closing brace
+    LazyFunctionBody(Token name, List<Token> tokens,
+            ErrorReporter reporter, boolean precedenceClimbing) {
+        this.name = name;
+        this.tokens = tokens;
+        this.reporter = reporter;
+        this.precedenceClimbing = precedenceClimbing;
+    }
+
+    // called by the resolver when it reaches the function declaration,
+    // the body is resolved in the scopes enclosing the declaration
+    void resolveWith(BiConsumer<List<Statement>, ErrorReporter> resolver) {
+        this.resolver = resolver;
+    }
+
+    boolean isParsed() {
+        return statements != null;
+    }
+
+    @Override
+    public Statement get(int index) {
+        return force().get(index);
+    }
+
+    @Override
+    public int size() {
+        return force().size();
+    }
+
+    private List<Statement> force() {
+        List<Statement> result = statements;
+        if (result == null) {
+            synchronized (this) {
+                result = statements;
+                if (result == null && !failed) {
+                    result = parse();
+                    statements = result;
+                    failed = result == null;
+                }
+                if (failed) {
+                    throw new RuntimeError(name, "Function '" + name.lexeme + "' has errors.");
+                }
+            }
+        }
+
+        return result;
+    }
+
+    // returns null if the body has errors, they are reported only once
+    private List<Statement> parse() {
+        List<Token> bodyTokens = new ArrayList<>(tokens.size() + 1);
+        bodyTokens.addAll(tokens);
+        Token last = tokens.get(tokens.size() - 1);
+        bodyTokens.add(new Token(TokenType.EOF, "", null, last.line));
+
+        Diagnostics diagnostics = new Diagnostics();
+        List<Statement> result = new Parser(bodyTokens, diagnostics)
+            .precedenceClimbing(precedenceClimbing)
+            .lazyFunctions(true)
+            .parseBody();
+        if (!diagnostics.hasErrors() && resolver != null) {
+            resolver.accept(result, diagnostics);
+        }
+
+        if (diagnostics.hasErrors()) {
+            diagnostics.reportTo(reporter);
+            return null;
+        }
+
+        return result;
+    }
+}
@@ -3,132 +3,164 @@ package ahodanenok.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public final class Lox {
 
-    private static final Interpreter interpreter = new Interpreter();
-
-    private static boolean hadError;
-    private static boolean hadRuntimeError;
-    private static boolean suppressErrorMessages;
+    // used by the parts of the interpreter created without a reporter
+    static final ErrorReporter reporter = new PrintingReporter(System.err);
+
+    private static boolean lazyFunctions;
+    private static boolean streaming;
+    private static boolean pipelined;
+    private static boolean singlePass;
+    private static ProgramCache cache;
+    private static Path snapshot;
+    private static Path restore;
+    private static Path serverSocket;
+    private static Path connectSocket;
+    private static Path profile;
+    private static boolean jmx;
 
     public static void main(String... args) throws Exception {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
-        }
-    }
-
-    private static void runFile(String filePath) throws IOException {
-        byte[] content = Files.readAllBytes(Paths.get(filePath));
-        run(new String(content, "UTF-8"));
-
-        if (hadError) {
-            System.exit(65);
-        } else if (hadRuntimeError) {
-            System.exit(70);
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--lazy")) {
+                lazyFunctions = true;
+            } else if (args[i].equals("--stream")) {
+                streaming = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipelined = true;
+            } else if (args[i].equals("--single-pass")) {
+                singlePass = true;
+            } else if (args[i].startsWith("--cache=")) {
+                cache = new ProgramCache(Paths.get(args[i].substring("--cache=".length())));
+            } else if (args[i].startsWith("--snapshot=")) {
+                snapshot = Paths.get(args[i].substring("--snapshot=".length()));
+            } else if (args[i].startsWith("--restore=")) {
+                restore = Paths.get(args[i].substring("--restore=".length()));
+            } else if (args[i].startsWith("--server=")) {
+                serverSocket = Paths.get(args[i].substring("--server=".length()));
+            } else if (args[i].startsWith("--connect=")) {
+                connectSocket = Paths.get(args[i].substring("--connect=".length()));
+            } else if (args[i].equals("--jmx")) {
+                jmx = true;
+            } else if (args[i].startsWith("--profile=")) {
+                profile = Paths.get(args[i].substring("--profile=".length()));
+            } else {
+                usage();
+            }
         }
-    }
-
-    private static void runPrompt() throws IOException {
-        BufferedReader reader =
-            new BufferedReader(new InputStreamReader(System.in));
 
-        String line;
-        while (true) {
-            System.out.print("> ");
-            line = reader.readLine();
-            if (line == null) {
-                break;
+        if (args.length - i > 1) {
+            usage();
+        } else if (streaming && (pipelined || cache != null)) {
+            System.err.println("--stream can't be combined with --pipeline or --cache.");
+            System.exit(64);
+        } else if (connectSocket != null) {
+            int status;
+            if (args.length - i == 1) {
+                status = LoxServer.connect(connectSocket, LoxServer.REQUEST_FILE,
+                    Paths.get(args[i]).toAbsolutePath().toString(), System.out, System.err);
+            } else {
+                status = LoxServer.connect(connectSocket, LoxServer.REQUEST_SOURCE,
+                    LoxServer.readAll(System.in), System.out, System.err);
             }
-
-            hadError = false;
-            runPrompt(line);
+            System.exit(status);
+        } else if (serverSocket != null) {
+            LoxServer.serve(LoxServer.bind(serverSocket), Lox::runIsolated);
         }
-    }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scan();
-        Parser parser = new Parser(tokens);
-        List<Statement> program = parser.parse();
-        if (hadError) {
-            return;
+        LoxRuntime runtime = newRuntime(System.out, System.err);
+        // the counters of the runtime can be watched while it runs
+        if (jmx) {
+            runtime.registerMBean();
         }
-
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(program);
-        if (hadError) {
-            return;
+        Profiler profiler = null;
+        if (profile != null) {
+            profiler = new Profiler(10, TimeUnit.MILLISECONDS);
+            runtime.profile(profiler);
+            profiler.start();
         }
 
-        interpreter.interpret(program);
-    }
-
-    private static void runPrompt(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scan();
-        List<Statement> program = null;
-        Parser parser = new Parser(tokens);
-
-        Expression expression;
-        try {
-            suppressErrorMessages = true;
-            expression = parser.parseExpression();
-        } finally {
-            suppressErrorMessages = false;
-        }
-
-        if (!hadError) {
-            program = List.of(new Statement.Print(expression));
+        int status = 0;
+        if (args.length - i == 1) {
+            status = runtime.runFile(Paths.get(args[i]));
         } else {
-            hadError = false;
-            program = parser.parse();
+            runPrompt(runtime);
         }
 
-        if (program.size() == 1 && program.get(0) instanceof Statement.Expr expr) {
-            program = List.of(new Statement.Print(expr.expression));
+        if (profiler != null) {
+            profiler.stop();
+            try (PrintStream out = new PrintStream(profile.toFile(), "UTF-8")) {
+                profiler.write(out);
+            }
+        }
+        if (status != 0) {
+            System.exit(status);
         }
 
-        if (hadError) {
-            return;
+        // the globals left by the script are restored with --restore
+        if (snapshot != null) {
+            try {
+                runtime.snapshot(snapshot);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(74);
+            }
         }
+    }
 
-        interpreter.interpret(program);
+    private static void usage() {
+        System.out.println("Usage: jlox [--lazy] [--stream] [--pipeline] [--single-pass] [--cache=<dir>]"
+            + " [--snapshot=<file>] [--restore=<file>]"
+            + " [--server=<socket>] [--connect=<socket>] [--profile=<file>] [--jmx] [script]");
+        System.exit(64);
     }
 
-    private static void report(int line, String where, String msg) {
-        hadError = true;
-        if (!suppressErrorMessages) {
-            System.err.println(String.format(
-                "[line %d] Error%s: %s", line, where, msg));
+    private static LoxRuntime newRuntime(PrintStream out, PrintStream err) throws IOException {
+        LoxRuntime runtime = new LoxRuntime(out, err)
+            .lazyFunctions(lazyFunctions)
+            .streaming(streaming)
+            .pipelined(pipelined)
+            .singlePass(singlePass)
+            .cache(cache);
+        if (restore != null) {
+            runtime.restore(restore);
         }
-    }
 
-    static void error(int line, String msg) {
-        report(line, "", msg);
+        return runtime;
     }
 
-    static void error(Token token, String msg) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", msg);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", msg);
+    // runs a script sent to the server on a new runtime
+    private static int runIsolated(String source, Path directory, PrintStream out, PrintStream err) {
+        LoxRuntime runtime;
+        try {
+            runtime = newRuntime(out, err);
+        } catch (IOException e) {
+            err.println("Can't restore " + restore);
+            return 66;
         }
+
+        return runtime.run(source, directory);
     }
 
-    static void runtimeError(Token token, String msg) {
-        if (!suppressErrorMessages) {
-            System.err.println(msg + "\n[line " + token.line + "]");
+    private static void runPrompt(LoxRuntime runtime) throws IOException {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(System.in));
+
+        String line;
+        while (true) {
+            System.out.print("> ");
+            line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+
+            runtime.runLine(line);
         }
-        hadRuntimeError = true;
     }
 }
@@ -0,0 +1,107 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+// Bindings backed by the globals of a script engine: scripts evaluated with them
+// define their variables right here, and the values put by the host are globals
+// visible to the scripts. Numbers are stored as Lox numbers, i.e. doubles,
+// other Java objects as host objects.
+final class LoxBindings extends AbstractMap<String, Object> implements Bindings {
+
+    final Environment globals;
+
+    LoxBindings() {
+        this(new Environment());
+        Interpreter.defineNatives(globals);
+    }
+
+    LoxBindings(Environment globals) {
+        this.globals = globals;
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        checkName(name);
+        Object previous = globals.values.put(name, Environment.encode(HostObject.toLox(value)));
+        globals.markInitialized(name);
+        return HostObject.toJava(Environment.decode(previous));
+    }
+
+    @Override
+    public Object get(Object name) {
+        checkName(name);
+        return HostObject.toJava(Environment.decode(globals.values.get(name)));
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        checkName(name);
+        return globals.values.containsKey(name);
+    }
+
+    @Override
+    public Object remove(Object name) {
+        checkName(name);
+        globals.initialized.remove(name);
+        return HostObject.toJava(Environment.decode(globals.values.remove(name)));
+    }
+
+    @Override
+    public int size() {
+        return globals.values.size();
+    }
+
+    // the entries hold the values as get returns them
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                Iterator<Map.Entry<String, Object>> entries = globals.values.entrySet().iterator();
+                return new Iterator<>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        Map.Entry<String, Object> entry = entries.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(),
+                            HostObject.toJava(Environment.decode(entry.getValue())));
+                    }
+
+                    @Override
+                    public void remove() {
+                        entries.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return globals.values.size();
+            }
+        };
+    }
+
+    private static void checkName(Object name) {
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+        if (!(name instanceof String)) {
+            throw new ClassCastException("name is not a string");
+        }
+        if (((String) name).isEmpty()) {
+            throw new IllegalArgumentException("name is empty");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A bounded queue passing values between tasks: send waits while the channel is full
+// and receive waits while it's empty. Once closed, the values already sent are still
+// received and then receive returns nil. It waits on a lock rather than a monitor,
+// so virtual threads waiting on a channel release their carrier threads.
+public final class LoxChannel {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    // nil is stored encoded, as in Environment
+    private final ArrayDeque<Object> values = new ArrayDeque<>();
+    private final int capacity;
+    private boolean closed;
+
+    LoxChannel(Object capacity) {
+        if (!(capacity instanceof Double n) || n < 1 || n != Math.floor(n) || n > Integer.MAX_VALUE) {
+            throw new HostError("Channel capacity must be a positive whole number.");
+        }
+
+        this.capacity = n.intValue();
+    }
+
+    public void send(Object value) {
+        lock.lock();
+        try {
+            while (values.size() == capacity && !closed) {
+                notFull.await();
+            }
+            if (closed) {
+                throw new HostError("Can't send to a closed channel.");
+            }
+
+            values.add(Environment.encode(value));
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HostError("Interrupted while sending to a channel.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Object receive() {
+        lock.lock();
+        try {
+            while (values.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (values.isEmpty()) {
+                return null;
+            }
+
+            notFull.signal();
+            return Environment.decode(values.remove());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HostError("Interrupted while receiving from a channel.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // wakes up all waiting tasks
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -23,9 +23,29 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        if (!Events.INSTANTIATION.isEnabled()) {
+            return instantiate(interpreter, arguments);
+        }
+
+        Events.Instantiation event = new Events.Instantiation();
+        event.begin();
+        try {
+            return instantiate(interpreter, arguments);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.className = name;
+                event.commit();
+            }
+        }
+    }
+
+    private LoxInstance instantiate(Interpreter interpreter, List<Object> arguments) {
         LoxInstance instance = new LoxInstance(this);
+        interpreter.counters.instances++;
         LoxFunction initializer = findMethod("init");
         if (initializer != null) {
+            interpreter.counters.environments++;
             initializer.bind(instance).call(interpreter, arguments);
         }
 
@@ -0,0 +1,63 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// The source of a script being edited, i.e. in an editor, checked for errors
+// after each edit. Only the top-level declarations an edit touches are scanned,
+// parsed and resolved again, see IncrementalFrontEnd. Imported modules are not
+// checked. A document is used by one thread at a time.
+public final class LoxDocument {
+
+    private final IncrementalFrontEnd frontEnd = new IncrementalFrontEnd();
+    private String text = "";
+
+    public LoxDocument() { }
+
+    public LoxDocument(String text) {
+        this.text = text;
+        frontEnd.update(text);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    // replaces oldLength characters at the offset with the new text,
+    // returns the errors of the edited source
+    public List<Diagnostic> edit(int offset, int oldLength, String newText) {
+        Objects.checkFromIndexSize(offset, oldLength, text.length());
+        text = text.substring(0, offset) + newText + text.substring(offset + oldLength);
+        frontEnd.update(text);
+        return diagnostics();
+    }
+
+    // in the order LoxRuntime reports them, resolution errors only if the source parses
+    public List<Diagnostic> diagnostics() {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        frontEnd.reportErrors(new ErrorReporter() {
+            @Override
+            public void error(int line, String msg) {
+                diagnostics.add(new Diagnostic(line, "", msg));
+            }
+
+            @Override
+            public void error(Token token, String msg) {
+                diagnostics.add(new Diagnostic(token.line,
+                    token.type == TokenType.EOF ? " at end" : " at '" + token.lexeme + "'", msg));
+            }
+        });
+        return diagnostics;
+    }
+
+    // an error at a line, where is empty or tells the token, i.e. " at 'var'"
+    public record Diagnostic(int line, String where, String message) {
+
+        // as printed by the command line interpreter
+        @Override
+        public String toString() {
+            return String.format("[line %d] Error%s: %s", line, where, message);
+        }
+    }
+}
@@ -4,9 +4,9 @@ import java.util.List;
 
 class LoxFunction implements LoxCallable {
 
-    private final Statement.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    final Statement.Function declaration;
+    final Environment closure;
+    final boolean isInitializer;
 
     LoxFunction(Statement.Function declaration,
             Environment environment, boolean isInitializer) {
@@ -23,6 +23,7 @@ class LoxFunction implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         Environment environment = new Environment(closure);
+        interpreter.counters.environments++;
         for (int i = 0; i < declaration.params.size(); i++) {
             environment.define(declaration.params.get(i).lexeme, arguments.get(i));
         }
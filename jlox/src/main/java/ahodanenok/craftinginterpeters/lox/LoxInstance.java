@@ -1,21 +1,23 @@
 package ahodanenok.craftinginterpreters.lox;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LoxInstance {
 
-    private final LoxClass klass;
-    private final Map<String, Object> fields;
+    final LoxClass klass;
+    // nil is stored encoded, as in Environment
+    final Map<String, Object> fields;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
-        this.fields = new HashMap<>();
+        this.fields = new ConcurrentHashMap<>();
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = fields.get(name.lexeme);
+        if (value != null) {
+            return Environment.decode(value);
         }
 
         LoxFunction method = klass.findMethod(name.lexeme);
@@ -27,8 +29,9 @@ public class LoxInstance {
             "Undefined property '" + name.lexeme + "'.");
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    // returns true if the field is new
+    boolean set(Token name, Object value) {
+        return fields.put(name.lexeme, Environment.encode(value)) == null;
     }
 
     @Override
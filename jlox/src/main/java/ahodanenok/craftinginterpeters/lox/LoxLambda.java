@@ -4,8 +4,8 @@ import java.util.List;
 
 class LoxLambda implements LoxCallable {
 
-    private final Expression.Lambda declaration;
-    private final Environment closure;
+    final Expression.Lambda declaration;
+    final Environment closure;
 
     LoxLambda(Expression.Lambda declaration, Environment environment) {
         this.declaration = declaration;
@@ -20,6 +20,7 @@ class LoxLambda implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         Environment environment = new Environment(closure);
+        interpreter.counters.environments++;
         for (int i = 0; i < declaration.params.size(); i++) {
             environment.define(declaration.params.get(i).lexeme, arguments.get(i));
         }
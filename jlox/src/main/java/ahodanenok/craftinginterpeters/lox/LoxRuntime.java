@@ -0,0 +1,434 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Runs Lox programs on its own interpreter, reporting errors to its own streams.
+// A runtime is used by one thread at a time, separate runtimes can run in parallel,
+// only the modules and the program cache are shared between them.
+public final class LoxRuntime {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final Reporter reporter;
+    private final Interpreter interpreter;
+    private final long id = IDS.incrementAndGet();
+    private ObjectName mbean;
+
+    private boolean lazyFunctions;
+    private boolean streaming;
+    private boolean pipelined;
+    private boolean singlePass;
+    private ProgramCache cache;
+    // negative if unlimited
+    private long maxSteps = -1;
+    private long maxCalls = -1;
+    private long maxMemory = -1;
+    private Duration timeout;
+
+    private boolean hadError;
+    private boolean hadRuntimeError;
+    private boolean suppressErrorMessages;
+
+    public LoxRuntime() {
+        this(System.out, System.err);
+    }
+
+    public LoxRuntime(PrintStream out, PrintStream err) {
+        this.reporter = new Reporter(err);
+        this.interpreter = new Interpreter(out, reporter);
+    }
+
+    LoxRuntime lazyFunctions(boolean lazyFunctions) {
+        this.lazyFunctions = lazyFunctions;
+        return this;
+    }
+
+    // Executes each top-level declaration as soon as it's parsed. Declarations are
+    // resolved one by one, as with singlePass, the streamed source is neither
+    // pipelined nor cached, so run fails if pipelined or cache are set too.
+    LoxRuntime streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    LoxRuntime pipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    LoxRuntime singlePass(boolean singlePass) {
+        this.singlePass = singlePass;
+        return this;
+    }
+
+    LoxRuntime cache(ProgramCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    // Limits the number of loop iterations and calls together made by each
+    // program run after this, including the tasks it spawns. Negative is unlimited.
+    public LoxRuntime maxSteps(long maxSteps) {
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    public LoxRuntime maxCalls(long maxCalls) {
+        this.maxCalls = maxCalls;
+        return this;
+    }
+
+    // Limits the bytes allocated by each program run after this, including the tasks
+    // it spawns, by instances, fields, strings, functions and scopes of variables.
+    // All allocations are counted, even if the objects are not used anymore.
+    // Negative is unlimited.
+    public LoxRuntime maxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        return this;
+    }
+
+    // null is unlimited, a program waiting on a channel or a task also times out
+    public LoxRuntime timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    // Can be called from any thread: the program being run fails with a runtime
+    // error at its next loop iteration or call, or where it waits on a channel or a task.
+    // Doesn't affect the programs run after it.
+    public void cancel() {
+        interpreter.cancel();
+    }
+
+    // the programs run after this are sampled by the profiler
+    LoxRuntime profile(Profiler profiler) {
+        interpreter.profile(profiler);
+        return this;
+    }
+
+    public LoxRuntimeMXBean metrics() {
+        return interpreter.metrics;
+    }
+
+    // Publishes the metrics with the platform MBean server, under
+    // ahodanenok.craftinginterpreters.lox:type=LoxRuntime,id=<n>.
+    // The server keeps the runtime until it's unregistered.
+    public ObjectName registerMBean() throws JMException {
+        if (mbean == null) {
+            ObjectName name = new ObjectName("ahodanenok.craftinginterpreters.lox:type=LoxRuntime,id=" + id);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(interpreter.metrics, name);
+            mbean = name;
+        }
+
+        return mbean;
+    }
+
+    public void unregisterMBean() throws JMException {
+        if (mbean != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+            mbean = null;
+        }
+    }
+
+    // replaces the globals with the ones written by snapshot
+    public void restore(Path snapshot) throws IOException {
+        interpreter.useGlobals(HeapSnapshot.read(snapshot));
+    }
+
+    public void snapshot(Path snapshot) throws IOException {
+        HeapSnapshot.write(interpreter.globals, snapshot);
+    }
+
+    // Exposes a Java object to the programs run after this as a global variable,
+    // its public methods and fields are its properties. A class is exposed as a
+    // callable creating its instances, with its static methods and fields as properties.
+    public void define(String name, Object value) {
+        interpreter.globals.define(name, HostObject.toLox(value));
+        interpreter.globals.markInitialized(name);
+    }
+
+    // programs executed after this define their variables in the given globals
+    void useGlobals(Environment globals) {
+        interpreter.useGlobals(globals);
+    }
+
+    // calls a function or a class from the host, runtime errors are thrown to the caller
+    Object call(LoxCallable callable, List<Object> arguments) {
+        Budget budget = budget();
+        interpreter.limit(budget);
+        budget.start();
+        boolean failed = true;
+        try {
+            Object value = interpreter.call(callable, arguments);
+            failed = false;
+            return value;
+        } finally {
+            interpreter.awaitTasks(failed);
+            budget.finish();
+        }
+    }
+
+    public int runFile(Path path) throws IOException {
+        path = path.toAbsolutePath();
+        return run(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), path.getParent());
+    }
+
+    // returns the exit status: 0 on success, 65 if the program has errors,
+    // 70 if it failed while running. Imported modules are looked up in the directory.
+    // It returns once the tasks of the program have ended, they are cancelled if the
+    // program failed, and a task failing without being joined fails the program.
+    public int run(String source, Path directory) {
+        if (streaming) {
+            if (pipelined || cache != null) {
+                throw new IllegalStateException("Streaming can't be combined with pipelining or caching.");
+            }
+
+            hadError = false;
+            hadRuntimeError = false;
+            interpreter.directory = directory;
+            runLimited(() -> runStreaming(source));
+            return status();
+        }
+
+        Program program = compile(source, directory);
+        if (program == null) {
+            return status();
+        }
+
+        return execute(program);
+    }
+
+    // returns null if the program has errors, they are reported by this runtime,
+    // the compiled program can be executed by any runtime, also concurrently
+    public Program compile(String source, Path directory) {
+        hadError = false;
+        hadRuntimeError = false;
+        List<Statement> statements = cache != null ? cache.load(source) : null;
+        if (statements == null) {
+            statements = analyze(source);
+            if (statements == null) {
+                return null;
+            }
+
+            if (cache != null) {
+                try {
+                    cache.store(source, statements);
+                } catch (IOException e) {
+                    // the program runs without being cached
+                }
+            }
+        }
+
+        // imported modules are compiled along with the program
+        Modules.compile(statements, directory);
+        if (!Modules.check(statements, directory, reporter)) {
+            return null;
+        }
+
+        return new Program(statements, directory);
+    }
+
+    // returns the exit status as run does
+    public int execute(Program program) {
+        hadError = false;
+        hadRuntimeError = false;
+        interpreter.directory = program.directory;
+        runLimited(() -> interpreter.interpret(program.statements));
+        return status();
+    }
+
+    // runs the code under a new budget, returns once its tasks have ended
+    private void runLimited(Runnable code) {
+        Budget budget = budget();
+        interpreter.limit(budget);
+        budget.start();
+        try {
+            code.run();
+            interpreter.awaitTasks(hadRuntimeError);
+        } finally {
+            budget.finish();
+        }
+    }
+
+    // the limits start anew with each run
+    private Budget budget() {
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        return new Budget(maxSteps, maxCalls, maxMemory, deadline);
+    }
+
+    private int status() {
+        if (hadError) {
+            return 65;
+        } else if (hadRuntimeError) {
+            return 70;
+        } else {
+            return 0;
+        }
+    }
+
+    // runs a line entered in the prompt, an expression is printed
+    public void runLine(String source) {
+        hadError = false;
+        Scanner scanner = new Scanner(source, reporter);
+        List<Token> tokens = scanner.scan();
+        List<Statement> program = null;
+        Parser parser = new Parser(tokens, reporter).precedenceClimbing(true);
+
+        Expression expression;
+        try {
+            suppressErrorMessages = true;
+            expression = parser.parseExpression();
+        } finally {
+            suppressErrorMessages = false;
+        }
+
+        if (!hadError) {
+            program = List.of(new Statement.Print(expression));
+        } else {
+            hadError = false;
+            program = parser.parse();
+        }
+
+        if (program.size() == 1 && program.get(0) instanceof Statement.Expr expr) {
+            program = List.of(new Statement.Print(expr.expression));
+        }
+
+        if (hadError) {
+            return;
+        }
+
+        hadRuntimeError = false;
+        List<Statement> statements = program;
+        runLimited(() -> interpreter.interpret(statements));
+    }
+
+    // returns null if there were errors
+    private List<Statement> analyze(String source) {
+        if (pipelined) {
+            return analyzePipelined(source);
+        }
+
+        // the phases overlap in the pipelined front end, so they are only timed here,
+        // single-pass resolution is counted as parsing
+        long startTime = System.nanoTime();
+        List<Token> tokens;
+        if (source.length() >= ParallelScanner.MIN_SOURCE_LENGTH) {
+            tokens = new ParallelScanner(source, reporter).scan();
+        } else {
+            tokens = new Scanner(source, reporter).scan();
+        }
+        long scanTime = System.nanoTime();
+        interpreter.metrics.addScanTime(scanTime - startTime);
+        // cached programs are stored with all function bodies
+        Parser parser = new Parser(tokens, reporter)
+            .precedenceClimbing(true)
+            .lazyFunctions(lazyFunctions && cache == null);
+        // resolution errors are reported only if the program parsed without errors
+        Diagnostics resolveErrors = new Diagnostics();
+        if (singlePass) {
+            parser.resolving(new Resolver(resolveErrors));
+        }
+        List<Statement> program = parser.parse();
+        long parseTime = System.nanoTime();
+        interpreter.metrics.addParseTime(parseTime - scanTime);
+        if (hadError) {
+            return null;
+        }
+
+        if (singlePass) {
+            resolveErrors.reportTo(reporter);
+        } else if (source.length() >= ParallelResolver.MIN_SOURCE_LENGTH) {
+            new ParallelResolver(reporter).resolve(program);
+        } else {
+            new Resolver(reporter).resolve(program);
+        }
+        interpreter.metrics.addResolveTime(System.nanoTime() - parseTime);
+        if (hadError) {
+            return null;
+        }
+
+        return program;
+    }
+
+    private List<Statement> analyzePipelined(String source) {
+        PipelinedFrontEnd frontEnd = new PipelinedFrontEnd(source);
+        List<Statement> program = frontEnd.analyze();
+        frontEnd.reportErrors(reporter);
+        if (hadError) {
+            return null;
+        }
+
+        return program;
+    }
+
+    // Each top-level declaration is executed as soon as it is parsed and resolved,
+    // its tokens and tree are not kept after that, unless a function refers to them.
+    // Once an error is found, nothing is executed anymore, but the rest of the source
+    // is still parsed and resolved to report all errors.
+    private void runStreaming(String source) {
+        TokenStream tokens = new TokenStream(new Scanner(source, reporter));
+        Parser parser = new Parser(tokens, reporter)
+            .precedenceClimbing(true)
+            .lazyFunctions(lazyFunctions);
+        Resolver resolver = new Resolver(reporter);
+        while (parser.hasMoreDeclarations()) {
+            Statement statement = parser.parseDeclaration();
+            tokens.dropBefore(parser.position());
+            if (hadError) {
+                continue;
+            }
+
+            resolver.resolve(List.of(statement));
+            if (hadError) {
+                continue;
+            }
+
+            // the modules are checked before they are executed, as compile does
+            if (statement instanceof Statement.Import) {
+                Modules.compile(List.of(statement), interpreter.directory);
+                if (!Modules.check(List.of(statement), interpreter.directory, reporter)) {
+                    continue;
+                }
+            }
+
+            interpreter.interpret(List.of(statement));
+            if (hadRuntimeError) {
+                return;
+            }
+        }
+    }
+
+    private final class Reporter extends PrintingReporter {
+
+        Reporter(PrintStream err) {
+            super(err);
+        }
+
+        @Override
+        void report(int line, String where, String msg) {
+            hadError = true;
+            if (!suppressErrorMessages) {
+                super.report(line, where, msg);
+            }
+        }
+
+        @Override
+        public void runtimeError(Token token, String msg) {
+            if (!suppressErrorMessages) {
+                super.runtimeError(token, msg);
+            }
+            hadRuntimeError = true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ahodanenok.craftinginterpreters.lox;
+
+// Counters of a runtime, cumulative since it was created, including the tasks
+// spawned by its programs. Times are in milliseconds.
+public interface LoxRuntimeMXBean {
+
+    long getStatementsExecuted();
+
+    long getCalls();
+
+    long getEnvironmentsAllocated();
+
+    long getInstancesCreated();
+
+    long getRuntimeErrors();
+
+    long getScanTime();
+
+    long getParseTime();
+
+    long getResolveTime();
+}
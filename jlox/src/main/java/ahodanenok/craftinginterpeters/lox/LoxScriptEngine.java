@@ -0,0 +1,345 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+// JSR-223 engine for Lox. A script is compiled once to a program, which can be
+// evaluated any number of times, also concurrently with different bindings.
+// The engine scope bindings are the globals of the scripts: variables defined
+// by a script stay there, so their functions can be invoked after it's evaluated.
+// Java objects put to the bindings or passed to functions are host objects in Lox.
+// Evaluation returns null, Lox has no value for a program.
+final class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+
+    private final ScriptEngineFactory factory;
+
+    LoxScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+        setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new LoxBindings();
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LoxRuntime runtime = new LoxRuntime(
+            new PrintStream(OutputStream.nullOutputStream()), printStream(errors));
+        Program program = runtime.compile(script, directory());
+        if (program == null) {
+            throw error(errors);
+        }
+
+        return new Script(program);
+    }
+
+    @Override
+    public CompiledScript compile(Reader reader) throws ScriptException {
+        return compile(read(reader));
+    }
+
+    // modules are imported relative to the file name set by the host, if any
+    private Path directory() {
+        Object fileName = get(ScriptEngine.FILENAME);
+        if (fileName != null) {
+            Path parent = Path.of(fileName.toString()).toAbsolutePath().getParent();
+            if (parent != null) {
+                return parent;
+            }
+        }
+
+        return Path.of("").toAbsolutePath();
+    }
+
+    private Object execute(Program program, ScriptContext context) throws ScriptException {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        Environment globals = globalsOf(bindings, context.getBindings(ScriptContext.GLOBAL_SCOPE));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream out = printStream(new WriterOutputStream(context.getWriter()));
+        LoxRuntime runtime = new LoxRuntime(out, printStream(errors));
+        runtime.useGlobals(globals);
+        int status;
+        try {
+            status = runtime.execute(program);
+        } catch (StackOverflowError e) {
+            throw new ScriptException("Stack overflow.");
+        } finally {
+            out.flush();
+            if (!(bindings instanceof LoxBindings)) {
+                bindings.putAll(new LoxBindings(globals));
+            }
+        }
+
+        if (status != 0) {
+            throw error(errors);
+        }
+
+        return null;
+    }
+
+    // Bindings created by the engine are used as the globals directly, the others
+    // are copied to fresh globals before the evaluation and back after it.
+    // Global scope values are defined unless there is a variable with the same name.
+    private static Environment globalsOf(Bindings bindings, Bindings globalScope) {
+        Environment globals;
+        if (bindings instanceof LoxBindings loxBindings) {
+            globals = loxBindings.globals;
+        } else {
+            LoxBindings copy = new LoxBindings();
+            if (bindings != null) {
+                copy.putAll(bindings);
+            }
+            globals = copy.globals;
+        }
+
+        if (globalScope != null) {
+            for (Map.Entry<String, Object> entry : globalScope.entrySet()) {
+                if (!globals.values.containsKey(entry.getKey())) {
+                    globals.define(entry.getKey(), HostObject.toLox(entry.getValue()));
+                    globals.markInitialized(entry.getKey());
+                }
+            }
+        }
+
+        return globals;
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+
+        Object function = context.getBindings(ScriptContext.ENGINE_SCOPE).get(name);
+        if (!(function instanceof LoxCallable callable)) {
+            throw new NoSuchMethodException(name);
+        }
+
+        return call(callable, args);
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+        if (!(thiz instanceof LoxInstance instance)) {
+            throw new IllegalArgumentException("thiz is not a Lox instance");
+        }
+
+        Object method = Environment.decode(instance.fields.get(name));
+        if (method == null) {
+            LoxFunction function = instance.klass.findMethod(name);
+            method = function != null ? function.bind(instance) : null;
+        }
+        if (!(method instanceof LoxCallable callable)) {
+            throw new NoSuchMethodException(name);
+        }
+
+        return call(callable, args);
+    }
+
+    private Object call(LoxCallable callable, Object[] args) throws ScriptException {
+        List<Object> arguments = new ArrayList<>(args != null ? args.length : 0);
+        if (args != null) {
+            for (Object arg : args) {
+                arguments.add(HostObject.toLox(arg));
+            }
+        }
+        if (callable.arity() != arguments.size() && callable.arity() >= 0) {
+            throw new ScriptException(String.format(
+                "Expected %d arguments but got %d.", callable.arity(), arguments.size()));
+        }
+
+        PrintStream out = printStream(new WriterOutputStream(context.getWriter()));
+        LoxRuntime runtime = new LoxRuntime(out, printStream(OutputStream.nullOutputStream()));
+        try {
+            return HostObject.toJava(runtime.call(callable, arguments));
+        } catch (HostError e) {
+            throw new ScriptException(e.getMessage());
+        } catch (RuntimeError e) {
+            throw new ScriptException(e.getMessage() + "\n[line " + e.token.line + "]");
+        } catch (StackOverflowError e) {
+            throw new ScriptException("Stack overflow.");
+        } finally {
+            out.flush();
+        }
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> type) {
+        return proxy(type, null);
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> type) {
+        if (!(thiz instanceof LoxInstance)) {
+            throw new IllegalArgumentException("thiz is not a Lox instance");
+        }
+
+        return proxy(type, thiz);
+    }
+
+    // the methods of the interface call the functions with the same names,
+    // or the methods of the instance, null if any of them is missing
+    private <T> T proxy(Class<T> type, Object thiz) {
+        if (type == null || !type.isInterface()) {
+            throw new IllegalArgumentException("type is not an interface");
+        }
+
+        for (Method method : type.getMethods()) {
+            if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+
+            Object callable;
+            if (thiz == null) {
+                callable = context.getBindings(ScriptContext.ENGINE_SCOPE).get(method.getName());
+            } else {
+                LoxInstance instance = (LoxInstance) thiz;
+                callable = instance.fields.containsKey(method.getName())
+                    ? Environment.decode(instance.fields.get(method.getName()))
+                    : instance.klass.findMethod(method.getName());
+            }
+            if (!(callable instanceof LoxCallable)) {
+                return null;
+            }
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+            (self, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return switch (method.getName()) {
+                        case "equals" -> self == args[0];
+                        case "hashCode" -> System.identityHashCode(self);
+                        default -> "Lox " + type.getName();
+                    };
+                }
+
+                return thiz == null
+                    ? invokeFunction(method.getName(), args)
+                    : invokeMethod(thiz, method.getName(), args);
+            });
+
+        return type.cast(proxy);
+    }
+
+    private static ScriptException error(ByteArrayOutputStream errors) {
+        return new ScriptException(errors.toString(StandardCharsets.UTF_8).strip());
+    }
+
+    private static PrintStream printStream(OutputStream out) {
+        return new PrintStream(out, true, StandardCharsets.UTF_8);
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+
+        return source.toString();
+    }
+
+    private final class Script extends CompiledScript {
+
+        private final Program program;
+
+        Script(Program program) {
+            this.program = program;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            return execute(program, context);
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+
+    // decodes the output of the interpreter into the writer of the script context,
+    // the print stream flushes it after each printed line
+    private static final class WriterOutputStream extends OutputStream {
+
+        private final Writer writer;
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        WriterOutputStream(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (size + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size * 2, size + len));
+            }
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writer.write(new String(buffer, 0, size, StandardCharsets.UTF_8));
+                size = 0;
+            }
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+// found by the ScriptEngineManager through META-INF/services
+public final class LoxScriptEngineFactory implements ScriptEngineFactory {
+
+    private static final List<String> NAMES = List.of("lox", "Lox", "jlox");
+    private static final List<String> EXTENSIONS = List.of("lox");
+    private static final List<String> MIME_TYPES = List.of("application/x-lox", "text/x-lox");
+
+    @Override
+    public String getEngineName() {
+        return "jlox";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Lox";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> NAMES.get(0);
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // evaluations with the same bindings share their globals
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return obj + "." + m + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return List.of(statements).stream()
+            .map(statement -> statement.endsWith(";") || statement.endsWith("}") ? statement : statement + ";")
+            .collect(Collectors.joining("\n"));
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
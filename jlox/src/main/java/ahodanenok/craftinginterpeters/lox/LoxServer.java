@@ -0,0 +1,247 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs scripts sent over a Unix domain socket in a long-living process,
+// so they are executed by an already started and warmed up JVM.
+//
+// A client sends one request per connection: a byte telling whether it is
+// a path to a script or the source itself and then its length and UTF-8 bytes.
+// The server answers with frames: output and error frames hold a length and
+// the bytes written by the script, the exit frame holds its exit status
+// and ends the response. A request longer than MAX_REQUEST_SIZE is answered
+// with an error frame and the exit status 76, without running anything.
+final class LoxServer {
+
+    static final int REQUEST_FILE = 0;
+    static final int REQUEST_SOURCE = 1;
+
+    static final int FRAME_EXIT = 0;
+    static final int FRAME_OUT = 1;
+    static final int FRAME_ERR = 2;
+
+    static final int MAX_REQUEST_SIZE = 64 * 1024 * 1024;
+    // frames are at most the size of the buffer they are sent from
+    private static final int FRAME_BUFFER_SIZE = 8192;
+
+    // runs a script and returns its exit status
+    interface Job {
+
+        int run(String source, Path directory, PrintStream out, PrintStream err);
+    }
+
+    private LoxServer() { }
+
+    // replaces the socket file left by a previous server
+    static ServerSocketChannel bind(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        return server;
+    }
+
+    // each client is served on its own thread, until the channel is closed
+    static void serve(ServerSocketChannel server, Job job) throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "lox-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (server) {
+            while (true) {
+                SocketChannel client = server.accept();
+                executor.execute(() -> {
+                    try (client) {
+                        handle(client, job);
+                    } catch (IOException e) {
+                        // the client has gone
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void handle(SocketChannel client, Job job) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+
+        int type = in.readByte();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_REQUEST_SIZE) {
+            byte[] message = ("Request size must be between 0 and " + MAX_REQUEST_SIZE + " bytes.\n")
+                .getBytes(StandardCharsets.UTF_8);
+            out.writeByte(FRAME_ERR);
+            out.writeInt(message.length);
+            out.write(message);
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(76);
+            out.flush();
+            return;
+        }
+        String request = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+
+        // tasks of the script write from their own threads,
+        // the frames of both streams are sent holding the same lock
+        Object lock = new Object();
+        FrameOutputStream outFrames = new FrameOutputStream(out, lock, FRAME_OUT, null);
+        FrameOutputStream errFrames = new FrameOutputStream(out, lock, FRAME_ERR, outFrames);
+        PrintStream scriptOut = new PrintStream(outFrames, false, StandardCharsets.UTF_8);
+        PrintStream scriptErr = new PrintStream(errFrames, true, StandardCharsets.UTF_8);
+        int status = run(type, request, job, scriptOut, scriptErr);
+        scriptOut.flush();
+        scriptErr.flush();
+
+        synchronized (lock) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    private static int run(int type, String request, Job job, PrintStream out, PrintStream err) {
+        String source = request;
+        Path directory = Path.of("").toAbsolutePath();
+        if (type == REQUEST_FILE) {
+            Path path = Path.of(request).toAbsolutePath();
+            try {
+                source = Files.readString(path);
+            } catch (IOException e) {
+                err.println("Can't read " + path);
+                return 66;
+            }
+            directory = path.getParent();
+        }
+
+        // a failing script must not stop the server
+        try {
+            return job.run(source, directory, out, err);
+        } catch (RuntimeException | StackOverflowError e) {
+            err.println(e);
+            return 70;
+        }
+    }
+
+    // sends a script or its source to the server and copies the output,
+    // returns the exit status of the script
+    static int connect(Path socket, int type, String request,
+            PrintStream scriptOut, PrintStream scriptErr) throws IOException {
+        try (SocketChannel server = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(server)));
+            byte[] bytes = request.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(type);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(server));
+            while (true) {
+                int frame = in.readByte();
+                if (frame == FRAME_EXIT) {
+                    return in.readInt();
+                }
+
+                int length = in.readInt();
+                if (length < 0 || length > FRAME_BUFFER_SIZE) {
+                    throw new IOException("Malformed frame from the server");
+                }
+                byte[] data = in.readNBytes(length);
+                PrintStream target = frame == FRAME_ERR ? scriptErr : scriptOut;
+                target.write(data);
+                target.flush();
+            }
+        } catch (EOFException e) {
+            throw new IOException("Server closed the connection", e);
+        }
+    }
+
+    static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    // buffers the output of a script and sends it in frames
+    private static final class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        // guards the buffers of both streams and the connection
+        private final Object lock;
+        private final int frame;
+        // flushed first to keep the order of the output written to both streams
+        private final FrameOutputStream preceding;
+        private final byte[] buffer = new byte[FRAME_BUFFER_SIZE];
+        private int size;
+
+        FrameOutputStream(DataOutputStream out, Object lock, int frame, FrameOutputStream preceding) {
+            this.out = out;
+            this.lock = lock;
+            this.frame = frame;
+            this.preceding = preceding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (lock) {
+                if (size == buffer.length) {
+                    flush();
+                }
+                buffer[size++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                while (len > 0) {
+                    if (size == buffer.length) {
+                        flush();
+                    }
+                    int n = Math.min(len, buffer.length - size);
+                    System.arraycopy(b, off, buffer, size, n);
+                    size += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+        }
+
+        // frames of both streams go to the same connection, in the order they are flushed
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                if (preceding != null) {
+                    preceding.flush();
+                }
+                if (size > 0) {
+                    out.writeByte(frame);
+                    out.writeInt(size);
+                    out.write(buffer, 0, size);
+                    size = 0;
+                }
+                out.flush();
+            }
+        }
+    }
+}
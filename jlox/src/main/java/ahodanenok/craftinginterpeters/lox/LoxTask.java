@@ -0,0 +1,148 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+
+// A function spawned or forked by a Lox program to run concurrently with it.
+// The function is called by its own interpreter, sharing the globals and the output
+// with the one that started it. It's exposed to Lox as a host object, its handle.
+// The run of the program waits for all its tasks to end, see Interpreter.awaitTasks.
+public final class LoxTask {
+
+    // the interpreter calling the function, it tracks the task until it's done
+    private final Interpreter interpreter;
+    // set before the task starts
+    private Future<Object> result;
+
+    private LoxTask(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    static LoxTask spawn(Interpreter parent, Object function) {
+        if (!(function instanceof LoxCallable callable) || callable.arity() > 0) {
+            throw new HostError("Can only spawn functions without parameters.");
+        }
+
+        LoxTask task = new LoxTask(new Interpreter(parent));
+        FutureTask<Object> future = new FutureTask<>(() -> task.run(callable));
+        task.result = future;
+        parent.track(task);
+        Tasks.EXECUTOR.execute(future);
+        return task;
+    }
+
+    // A task forked by another one is pushed to the queue of its worker thread,
+    // idle workers steal it from there, and a worker joining it runs other tasks
+    // while waiting, so recursive splitting keeps all cores busy.
+    static LoxTask fork(Interpreter parent, Object function) {
+        if (!(function instanceof LoxCallable callable) || callable.arity() > 0) {
+            throw new HostError("Can only fork functions without parameters.");
+        }
+
+        LoxTask task = new LoxTask(new Interpreter(parent));
+        RecursiveTask<Object> forked = new RecursiveTask<>() {
+            @Override
+            protected Object compute() {
+                return task.call(callable);
+            }
+        };
+        task.result = forked;
+        parent.track(task);
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == Tasks.POOL) {
+            forked.fork();
+        } else {
+            Tasks.POOL.execute(forked);
+        }
+
+        return task;
+    }
+
+    // a spawned task waiting on a channel or another task is interrupted when
+    // the run is cancelled or times out
+    private Object run(LoxCallable callable) {
+        interpreter.enter();
+        try {
+            return call(callable);
+        } finally {
+            interpreter.exit();
+        }
+    }
+
+    // a task which failed is tracked until it's joined, so its error can be reported
+    private Object call(LoxCallable callable) {
+        boolean failed = true;
+        try {
+            Object value = interpreter.call(callable, List.of());
+            failed = false;
+            return value;
+        } finally {
+            interpreter.retire();
+            if (!failed) {
+                interpreter.untrack(this);
+            }
+        }
+    }
+
+    // waits for the function to return and returns its result,
+    // a runtime error of the function is rethrown to the joining task
+    public Object join() {
+        try {
+            return get();
+        } finally {
+            interpreter.untrack(this);
+        }
+    }
+
+    // waits for the task to end, even if interrupted by the budget,
+    // returns the runtime error it failed with, null if none
+    RuntimeError await() {
+        while (true) {
+            try {
+                result.get();
+                return null;
+            } catch (InterruptedException e) {
+                // the task is being cancelled along with the run
+            } catch (ExecutionException e) {
+                // not at any token of the program if not a runtime error, i.e. a stack overflow
+                return e.getCause() instanceof RuntimeError error ? error : null;
+            }
+        }
+    }
+
+    private Object get() {
+        if (result instanceof ForkJoinTask<Object> task) {
+            return joinForked(task);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HostError("Interrupted while joining a task.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StackOverflowError) {
+                throw new HostError("Stack overflow in a spawned task.");
+            }
+            throw HostError.of(e.getCause());
+        }
+    }
+
+    private static Object joinForked(ForkJoinTask<Object> task) {
+        try {
+            return task.join();
+        } catch (StackOverflowError e) {
+            throw new HostError("Stack overflow in a forked task.");
+        } catch (RuntimeException e) {
+            throw HostError.of(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,239 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Modules imported by the programs. The compiled modules are shared by all
+// interpreters of the process, a module is compiled again when its file is modified.
+// The modules are executed separately for each interpreter along with the tasks it
+// spawns: once, by the first program importing it, later imports copy the globals
+// it has defined, unless the module has changed since.
+final class Modules {
+
+    private static final Map<Path, Module> modules = new ConcurrentHashMap<>();
+
+    private Modules() { }
+
+    static Module get(Path path) {
+        return modules.computeIfAbsent(path.toAbsolutePath().normalize(), Module::new);
+    }
+
+    // compiles the modules imported by the program and by the imported modules,
+    // the modules are compiled in parallel
+    static void compile(List<Statement> program, Path directory) {
+        Set<Module> seen = ConcurrentHashMap.newKeySet();
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(compileTasks(program, directory, seen));
+            }
+        });
+    }
+
+    private static List<RecursiveAction> compileTasks(
+            List<Statement> program, Path directory, Set<Module> seen) {
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (Statement.Import statement : imports(program)) {
+            Module module = get(directory.resolve((String) statement.path.literal));
+            if (!seen.add(module)) {
+                continue;
+            }
+
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    Compiled compiled = module.compile();
+                    if (compiled.isValid()) {
+                        invokeAll(compileTasks(compiled.program, module.directory(), seen));
+                    }
+                }
+            });
+        }
+
+        return tasks;
+    }
+
+    // reports errors of the modules imported by the program and by the imported modules,
+    // returns false if there were any
+    static boolean check(List<Statement> program, Path directory, ErrorReporter reporter) {
+        return check(program, directory, reporter, ConcurrentHashMap.newKeySet());
+    }
+
+    private static boolean check(List<Statement> program, Path directory,
+            ErrorReporter reporter, Set<Module> seen) {
+        boolean ok = true;
+        for (Statement.Import statement : imports(program)) {
+            Module module = get(directory.resolve((String) statement.path.literal));
+            if (!seen.add(module)) {
+                continue;
+            }
+
+            Compiled compiled = module.check(reporter, statement.path);
+            if (compiled != null) {
+                ok &= check(compiled.program, module.directory(), reporter, seen);
+            } else {
+                ok = false;
+            }
+        }
+
+        return ok;
+    }
+
+    // imports are allowed only in top-level code
+    private static List<Statement.Import> imports(List<Statement> program) {
+        List<Statement.Import> imports = new ArrayList<>();
+        for (Statement statement : program) {
+            if (statement instanceof Statement.Import i) {
+                imports.add(i);
+            }
+        }
+
+        return imports;
+    }
+
+    // a version of a module, the program is null if it can't be read
+    private record Compiled(FileTime modified, List<Statement> program, Diagnostics errors) {
+
+        boolean isValid() {
+            return program != null && !errors.hasErrors();
+        }
+    }
+
+    // an execution of a module by an interpreter, or by one of its tasks
+    static final class Execution {
+
+        private final List<Statement> program;
+        private final Interpreter loader;
+        private final CompletableFuture<Environment> globals = new CompletableFuture<>();
+
+        private Execution(List<Statement> program, Interpreter loader) {
+            this.program = program;
+            this.loader = loader;
+        }
+    }
+
+    static final class Module {
+
+        final Path path;
+        // compilation doesn't wait for the execution of other modules,
+        // so it never deadlocks with a module importing its importer
+        private final Object compileLock = new Object();
+        private Compiled compiled;
+
+        private Module(Path path) {
+            this.path = path;
+        }
+
+        private Path directory() {
+            return path.getParent();
+        }
+
+        // returns the latest version of the module, compiling it if the file
+        // has been modified, or couldn't be read before
+        private Compiled compile() {
+            synchronized (compileLock) {
+                FileTime modified;
+                String source;
+                try {
+                    modified = Files.getLastModifiedTime(path);
+                    if (compiled != null && compiled.program != null && modified.equals(compiled.modified)) {
+                        return compiled;
+                    }
+                    source = Files.readString(path);
+                } catch (IOException e) {
+                    compiled = new Compiled(null, null, new Diagnostics());
+                    return compiled;
+                }
+
+                Diagnostics errors = new Diagnostics();
+                List<Statement> program = new Parser(new Scanner(source, errors).scan(), errors)
+                    .precedenceClimbing(true)
+                    .parse();
+                if (!errors.hasErrors()) {
+                    new Resolver(errors).resolve(program);
+                }
+                compiled = new Compiled(modified, program, errors);
+                return compiled;
+            }
+        }
+
+        // returns null if the module can't be read or has errors
+        private Compiled check(ErrorReporter reporter, Token importPath) {
+            Compiled compiled = compile();
+            if (compiled.isValid()) {
+                return compiled;
+            }
+
+            if (compiled.program == null) {
+                reporter.error(importPath, "Can't read module.");
+            } else {
+                compiled.errors.reportTo(reporter);
+                reporter.error(importPath, "Module has errors.");
+            }
+
+            return null;
+        }
+
+        // Returns the globals of the module, executing it on the first import by the
+        // interpreter or its tasks. Other tasks importing the module wait until it is
+        // executed, without holding any lock, except for the tasks spawned by the
+        // module itself, which may be joined by it, so they fail as a circular import.
+        // A module which failed is executed again by the next import.
+        Environment execute(Interpreter interpreter, Token importPath) {
+            Compiled compiled = compile();
+            if (!compiled.isValid()) {
+                if (compiled.program == null) {
+                    throw new RuntimeError(importPath, "Can't read module.");
+                }
+
+                compiled.errors.reportTo(interpreter.reporter);
+                throw new RuntimeError(importPath, "Module has errors.");
+            }
+
+            Execution created = new Execution(compiled.program, interpreter);
+            Execution execution = interpreter.modules.compute(path, (key, previous) ->
+                previous != null
+                        && previous.program == compiled.program
+                        && !previous.globals.isCompletedExceptionally()
+                    ? previous
+                    : created);
+            if (execution != created) {
+                if (!execution.globals.isDone() && interpreter.descendsFrom(execution.loader)) {
+                    throw new RuntimeError(importPath, "Circular import.");
+                }
+
+                try {
+                    return execution.globals.join();
+                } catch (CompletionException e) {
+                    throw new RuntimeError(importPath, "Module failed to load.");
+                }
+            }
+
+            try {
+                // compiles the imported modules in parallel before they are executed one by one
+                Modules.compile(compiled.program, directory());
+
+                Environment moduleGlobals = new Environment();
+                Interpreter.defineNatives(moduleGlobals);
+                interpreter.executeModule(compiled.program, moduleGlobals, directory());
+                created.globals.complete(moduleGlobals);
+                return moduleGlobals;
+            } catch (Throwable e) {
+                created.globals.completeExceptionally(e);
+                interpreter.modules.remove(path, created);
+                throw e;
+            }
+        }
+    }
+}
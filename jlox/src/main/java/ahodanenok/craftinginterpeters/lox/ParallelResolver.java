@@ -0,0 +1,74 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Top-level names are globals which aren't tracked by the resolver,
+// so each top-level declaration is resolved the same way regardless
+// of the others. Function and class declarations are resolved as separate
+// tasks, the statements between them are grouped into one task.
+// Resolution results are stored in the nodes, which belong to one task only.
+final class ParallelResolver {
+
+    // smaller sources are resolved faster on a single thread
+    static final int MIN_SOURCE_LENGTH = 1 << 20;
+
+    private final ErrorReporter reporter;
+
+    ParallelResolver() {
+        this(Lox.reporter);
+    }
+
+    ParallelResolver(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    void resolve(List<Statement> program) {
+        List<List<Statement>> parts = split(program);
+        List<Callable<Diagnostics>> tasks = new ArrayList<>(parts.size());
+        for (List<Statement> part : parts) {
+            tasks.add(() -> {
+                Diagnostics diagnostics = new Diagnostics();
+                new Resolver(diagnostics).resolve(part);
+                return diagnostics;
+            });
+        }
+
+        // reported in the order of the declarations,
+        // the same as resolving them one by one
+        try {
+            for (Future<Diagnostics> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                future.get().reportTo(reporter);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<List<Statement>> split(List<Statement> program) {
+        List<List<Statement>> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < program.size(); i++) {
+            Statement statement = program.get(i);
+            if (statement instanceof Statement.Function || statement instanceof Statement.Class) {
+                if (start < i) {
+                    parts.add(program.subList(start, i));
+                }
+                parts.add(program.subList(i, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < program.size()) {
+            parts.add(program.subList(start, program.size()));
+        }
+
+        return parts;
+    }
+}
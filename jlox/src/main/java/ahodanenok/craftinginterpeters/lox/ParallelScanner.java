@@ -0,0 +1,151 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+final class ParallelScanner {
+
+    // smaller sources are scanned faster on a single thread
+    static final int MIN_SOURCE_LENGTH = 1 << 20;
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private final String source;
+    private final int chunkSize;
+    private final ErrorReporter reporter;
+
+    ParallelScanner(String source) {
+        this(source, Lox.reporter);
+    }
+
+    ParallelScanner(String source, ErrorReporter reporter) {
+        this(source, DEFAULT_CHUNK_SIZE, reporter);
+    }
+
+    ParallelScanner(String source, int chunkSize, ErrorReporter reporter) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize < 1");
+        }
+
+        this.source = source;
+        this.chunkSize = chunkSize;
+        this.reporter = reporter;
+    }
+
+    List<Token> scan() {
+        List<Integer> bounds = split();
+        if (bounds.size() <= 2) {
+            return new Scanner(source, reporter).scan();
+        }
+
+        int[] lines = countLines(bounds);
+        List<Chunk> chunks = invokeAll(bounds.size() - 1, i ->
+            scanChunk(bounds.get(i), bounds.get(i + 1), lines[i]));
+
+        // Chunks were scanned as if each of them started outside of a token,
+        // which doesn't hold when the previous chunk ended in the middle
+        // of a string or a block comment. Such chunks are dropped and
+        // the rest of them is rescanned from the point the token has ended.
+        List<Token> tokens = new ArrayList<>();
+        int position = 0;
+        int line = 1;
+        for (Chunk chunk : chunks) {
+            if (position >= chunk.end) {
+                continue;
+            }
+
+            if (position != chunk.start) {
+                chunk = scanChunk(position, chunk.end, line);
+            }
+
+            tokens.addAll(chunk.tokens);
+            chunk.diagnostics.reportTo(reporter);
+            position = chunk.position;
+            line = chunk.line;
+        }
+        tokens.add(new Token(TokenType.EOF, "", null, line));
+
+        return tokens;
+    }
+
+    // chunks start at the beginning of a line,
+    // so line comments, identifiers and numbers are never split
+    private List<Integer> split() {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+
+        int position = 0;
+        while (source.length() - position > chunkSize) {
+            int newLine = source.indexOf('\n', position + chunkSize - 1);
+            if (newLine < 0 || newLine == source.length() - 1) {
+                break;
+            }
+
+            position = newLine + 1;
+            bounds.add(position);
+        }
+        bounds.add(source.length());
+
+        return bounds;
+    }
+
+    private int[] countLines(List<Integer> bounds) {
+        List<Integer> newLines = invokeAll(bounds.size() - 1, i -> {
+            int count = 0;
+            for (int j = bounds.get(i), end = bounds.get(i + 1); j < end; j++) {
+                if (source.charAt(j) == '\n') {
+                    count++;
+                }
+            }
+
+            return count;
+        });
+
+        int[] lines = new int[newLines.size()];
+        lines[0] = 1;
+        for (int i = 1; i < lines.length; i++) {
+            lines[i] = lines[i - 1] + newLines.get(i - 1);
+        }
+
+        return lines;
+    }
+
+    private Chunk scanChunk(int start, int end, int line) {
+        Diagnostics diagnostics = new Diagnostics();
+        Scanner scanner = new Scanner(source, start, line, diagnostics);
+        List<Token> tokens = scanner.scanUntil(end);
+
+        return new Chunk(start, end, tokens, scanner.position(), scanner.line(), diagnostics);
+    }
+
+    private <T> List<T> invokeAll(int count, IntFunction<T> task) {
+        List<Callable<T>> callables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            callables.add(() -> task.apply(index));
+        }
+
+        List<T> results = new ArrayList<>(count);
+        try {
+            for (Future<T> future : ForkJoinPool.commonPool().invokeAll(callables)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        return results;
+    }
+
+    private record Chunk(
+            int start, int end, List<Token> tokens,
+            int position, int line, Diagnostics diagnostics) { }
+}
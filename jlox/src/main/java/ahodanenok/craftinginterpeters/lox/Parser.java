@@ -1,15 +1,110 @@
 package ahodanenok.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 final class Parser {
 
+    private enum Precedence {
+
+        NONE,
+        COMMA,
+        ASSIGNMENT,
+        TERNARY,
+        OR,
+        AND,
+        EQUALITY,
+        COMPARISON,
+        TERM,
+        FACTOR,
+        UNARY;
+
+        Precedence next() {
+            return VALUES[ordinal() + 1];
+        }
+
+        private static final Precedence[] VALUES = values();
+    }
+
+    // precedence of the binary operators, indexed by the token type ordinal
+    private static final Precedence[] INFIX_PRECEDENCE;
+    // binary operators which are reported when found without the left operand
+    private static final boolean[] MISSING_LEFT;
+    static {
+        INFIX_PRECEDENCE = new Precedence[TokenType.values().length];
+        Arrays.fill(INFIX_PRECEDENCE, Precedence.NONE);
+        INFIX_PRECEDENCE[TokenType.COMMA.ordinal()] = Precedence.COMMA;
+        INFIX_PRECEDENCE[TokenType.EQUAL.ordinal()] = Precedence.ASSIGNMENT;
+        INFIX_PRECEDENCE[TokenType.QUESTION.ordinal()] = Precedence.TERNARY;
+        INFIX_PRECEDENCE[TokenType.OR.ordinal()] = Precedence.OR;
+        INFIX_PRECEDENCE[TokenType.AND.ordinal()] = Precedence.AND;
+        INFIX_PRECEDENCE[TokenType.BANG_EQUAL.ordinal()] = Precedence.EQUALITY;
+        INFIX_PRECEDENCE[TokenType.EQUAL_EQUAL.ordinal()] = Precedence.EQUALITY;
+        INFIX_PRECEDENCE[TokenType.GREATER.ordinal()] = Precedence.COMPARISON;
+        INFIX_PRECEDENCE[TokenType.GREATER_EQUAL.ordinal()] = Precedence.COMPARISON;
+        INFIX_PRECEDENCE[TokenType.LESS.ordinal()] = Precedence.COMPARISON;
+        INFIX_PRECEDENCE[TokenType.LESS_EQUAL.ordinal()] = Precedence.COMPARISON;
+        INFIX_PRECEDENCE[TokenType.PLUS.ordinal()] = Precedence.TERM;
+        INFIX_PRECEDENCE[TokenType.MINUS.ordinal()] = Precedence.TERM;
+        INFIX_PRECEDENCE[TokenType.SLASH.ordinal()] = Precedence.FACTOR;
+        INFIX_PRECEDENCE[TokenType.STAR.ordinal()] = Precedence.FACTOR;
+
+        MISSING_LEFT = new boolean[TokenType.values().length];
+        MISSING_LEFT[TokenType.COMMA.ordinal()] = true;
+        MISSING_LEFT[TokenType.BANG_EQUAL.ordinal()] = true;
+        MISSING_LEFT[TokenType.EQUAL_EQUAL.ordinal()] = true;
+        MISSING_LEFT[TokenType.GREATER.ordinal()] = true;
+        MISSING_LEFT[TokenType.GREATER_EQUAL.ordinal()] = true;
+        MISSING_LEFT[TokenType.LESS.ordinal()] = true;
+        MISSING_LEFT[TokenType.LESS_EQUAL.ordinal()] = true;
+        MISSING_LEFT[TokenType.PLUS.ordinal()] = true;
+        MISSING_LEFT[TokenType.SLASH.ordinal()] = true;
+        MISSING_LEFT[TokenType.STAR.ordinal()] = true;
+    }
+
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
     private int current;
+    private boolean precedenceClimbing;
+    private boolean lazyFunctions;
+    private Resolver resolver;
+    private boolean hadError;
 
     Parser(List<Token> tokens) {
+        this(tokens, Lox.reporter);
+    }
+
+    Parser(List<Token> tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
+    }
+
+    // Parses expressions with the operator precedence table
+    // instead of descending through a method per precedence level.
+    // Produces the same trees and errors, but needs much less stack
+    // for deeply nested expressions.
+    Parser precedenceClimbing(boolean enabled) {
+        this.precedenceClimbing = enabled;
+        return this;
+    }
+
+    // Only finds the closing brace of function and method bodies,
+    // they are parsed when the function is called for the first time.
+    // Errors in a body are reported only if it gets parsed.
+    Parser lazyFunctions(boolean enabled) {
+        this.lazyFunctions = enabled;
+        return this;
+    }
+
+    // Resolves variables, 'this' and 'super' as their nodes are created,
+    // instead of walking the parsed program with the resolver afterwards.
+    // Resolution errors are reported to the resolver's reporter in the same
+    // order as resolving the program would report them, but only if the
+    // program has no parse errors the scopes are guaranteed to be consistent.
+    Parser resolving(Resolver resolver) {
+        this.resolver = resolver;
+        return this;
     }
 
     List<Statement> parse() {
@@ -21,6 +116,28 @@ final class Parser {
         return program;
     }
 
+    boolean hasMoreDeclarations() {
+        return hasMoreTokens();
+    }
+
+    Statement parseDeclaration() {
+        return declaration();
+    }
+
+    // index of the next token to parse
+    int position() {
+        return current;
+    }
+
+    // parses the statements of a block following its opening brace
+    List<Statement> parseBody() {
+        try {
+            return block();
+        } catch (ParseException e) {
+            return new ArrayList<>();
+        }
+    }
+
     Expression parseExpression() {
         try {
             return expression();
@@ -34,9 +151,11 @@ final class Parser {
             if (match(TokenType.VAR)) {
                 return varDeclaration();
             } else if (match(TokenType.FUN)) {
-                return function("function");
+                return function("function", null);
             } else if (match(TokenType.CLASS)) {
                 return classDeclaration();
+            } else if (match(TokenType.IMPORT)) {
+                return importDeclaration();
             } else {
                 return statement();
             }
@@ -48,17 +167,33 @@ final class Parser {
 
     private Statement varDeclaration() {
         Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
+        if (resolver != null) {
+            resolver.declare(name);
+        }
         Expression initializer = null;
         if (match(TokenType.EQUAL)) {
             initializer = lambda();
         }
+        if (resolver != null) {
+            resolver.define(name);
+        }
         consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
 
         return new Statement.Var(name, initializer);
     }
 
-    private Statement.Function function(String kind) {
+    // type is null for functions, which are declared in the enclosing scope
+    private Statement.Function function(String kind, Resolver.FunctionType type) {
         Token name = consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        if (resolver != null) {
+            if (type == null) {
+                resolver.declare(name);
+                resolver.define(name);
+                type = Resolver.FunctionType.FUNCTION;
+            } else {
+                type = resolver.methodType(name);
+            }
+        }
 
         consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> params = new ArrayList<>();
@@ -74,11 +209,40 @@ final class Parser {
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
 
         consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        List<Statement> body = block();
+        List<Statement> body;
+        if (lazyFunctions) {
+            body = skipBody(name);
+            if (resolver != null) {
+                resolver.resolveLater((LazyFunctionBody) body, params, type);
+            }
+        } else if (resolver != null) {
+            Resolver.FunctionType prevFunction = resolver.beginFunction(params, type);
+            body = block();
+            resolver.endFunction(prevFunction);
+        } else {
+            body = block();
+        }
 
         return new Statement.Function(name, params, body);
     }
 
+    private List<Statement> skipBody(Token name) {
+        int start = current;
+        int depth = 1;
+        while (hasMoreTokens()) {
+            TokenType type = advance().type;
+            if (type == TokenType.LEFT_BRACE) {
+                depth++;
+            } else if (type == TokenType.RIGHT_BRACE && --depth == 0) {
+                // copied, the token list could be a stream dropping parsed tokens
+                return new LazyFunctionBody(
+                    name, List.copyOf(tokens.subList(start, current)), reporter, precedenceClimbing);
+            }
+        }
+
+        throw error(peek(), "Expect '}' after block.");
+    }
+
     private Statement classDeclaration() {
         Token name = consume(TokenType.IDENTIFIER, "Expect class name.");
 
@@ -89,24 +253,50 @@ final class Parser {
         }
 
         consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
+        Resolver.ClassType prevClass = null;
+        if (resolver != null) {
+            prevClass = resolver.beginClass(name, parent);
+        }
         List<Statement.Function> methods = new ArrayList<>();
         while (hasMoreTokens() && !check(TokenType.RIGHT_BRACE)) {
-            methods.add(function("method"));
+            methods.add(function("method", Resolver.FunctionType.METHOD));
         }
         consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
+        if (resolver != null) {
+            resolver.endClass(parent != null, prevClass);
+        }
 
         return new Statement.Class(name, parent, methods);
     }
 
+    private Statement importDeclaration() {
+        Token keyword = previous();
+        if (resolver != null) {
+            resolver.checkImport(keyword);
+        }
+        Token path = consume(TokenType.STRING, "Expect module path after 'import'.");
+        consume(TokenType.SEMICOLON, "Expect ';' after module path.");
+        return new Statement.Import(keyword, path);
+    }
+
     private Statement statement() {
         if (match(TokenType.PRINT)) {
             return printStatement();
         } else if (match(TokenType.LEFT_BRACE)) {
-            return new Statement.Block(block());
+            if (resolver == null) {
+                return new Statement.Block(block());
+            }
+
+            resolver.beginScope();
+            Statement statement = new Statement.Block(block());
+            resolver.endScope();
+            return statement;
         } else if (match(TokenType.IF)) {
             return ifStatement();
         } else if (match(TokenType.WHILE)) {
             return whileStatement();
+        } else if (checkContextual("parallel") && checkNext(TokenType.FOR)) {
+            return parallelForStatement();
         } else if (match(TokenType.FOR)) {
             return forStatement();
         } else if (match(TokenType.BREAK)) {
@@ -149,15 +339,76 @@ final class Parser {
     }
 
     private Statement whileStatement() {
+        Token keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
         Expression condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
         Statement body = statement();
-        return new Statement.While(condition, body);
+        return new Statement.While(keyword, condition, body);
+    }
+
+    // 'parallel' and 'reduce' are keywords only here, so they are still valid names
+    //
+    //   parallel for (var i : from, to) reduce (+ sum, * product) body
+    //
+    // runs the body for the numbers from 'from' up to 'to', not including it
+    private Statement parallelForStatement() {
+        Token keyword = advance();
+        advance();
+        consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+        consume(TokenType.VAR, "Expect 'var' after '(' in parallel loop.");
+        Token variable = consume(TokenType.IDENTIFIER, "Expect variable name.");
+        consume(TokenType.COLON, "Expect ':' after loop variable.");
+
+        // the whole loop is resolved once it's parsed,
+        // the body is resolved in the scope of the loop variable
+        Resolver enclosingResolver = resolver;
+        resolver = null;
+        Statement.ParallelFor statement;
+        try {
+            Expression from = expression();
+            consume(TokenType.COMMA, "Expect ',' after range start.");
+            Expression to = expression();
+            consume(TokenType.RIGHT_PAREN, "Expect ')' after range end.");
+
+            List<Token> operators = new ArrayList<>();
+            List<Expression.Variable> reductions = new ArrayList<>();
+            if (checkContextual("reduce") && checkNext(TokenType.LEFT_PAREN)) {
+                advance();
+                advance();
+                do {
+                    if (!match(TokenType.PLUS, TokenType.STAR)) {
+                        throw error(peek(), "Expect '+' or '*' before reduction variable.");
+                    }
+                    operators.add(previous());
+                    reductions.add(new Expression.Variable(
+                        consume(TokenType.IDENTIFIER, "Expect reduction variable name.")));
+                } while (match(TokenType.COMMA));
+                consume(TokenType.RIGHT_PAREN, "Expect ')' after reductions.");
+            }
+
+            Statement body = statement();
+            statement = new Statement.ParallelFor(keyword, variable, from, to, operators, reductions, body);
+        } finally {
+            resolver = enclosingResolver;
+        }
+
+        if (resolver != null && !hadError) {
+            resolver.resolve(statement);
+        }
+
+        return statement;
     }
 
     private Statement forStatement() {
+        Token keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+        // scopes of the blocks the loop is desugared into
+        boolean initializerScope = resolver != null && !check(TokenType.SEMICOLON);
+        if (initializerScope) {
+            resolver.beginScope();
+        }
+
         Statement initializer;
         if (match(TokenType.SEMICOLON)) {
             initializer = null;
@@ -175,18 +426,40 @@ final class Parser {
         }
         consume(TokenType.SEMICOLON, "Expect ';' after loop condition.");
 
+        // the increment is executed after the body,
+        // so it's resolved after the body too
         Expression increment = null;
         if (!check(TokenType.RIGHT_PAREN)) {
-            increment = expression();
+            Resolver enclosingResolver = resolver;
+            resolver = null;
+            try {
+                increment = expression();
+            } finally {
+                resolver = enclosingResolver;
+            }
         }
         consume(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
 
+        if (resolver != null && increment != null) {
+            resolver.beginScope();
+        }
         Statement body = statement();
+        if (resolver != null && increment != null) {
+            // the tree could be incomplete
+            if (!hadError) {
+                resolver.resolve(increment);
+            }
+            resolver.endScope();
+        }
+        if (initializerScope) {
+            resolver.endScope();
+        }
+
         if (increment != null) {
             body = new Statement.Block(List.of(
                 body, new Statement.Expr(increment)));
         }
-        body = new Statement.While(condition, body);
+        body = new Statement.While(keyword, condition, body);
         if (initializer != null) {
             body = new Statement.Block(List.of(initializer, body));
         }
@@ -202,6 +475,9 @@ final class Parser {
 
     private Statement returnStatement() {
         Token keyword = previous();
+        if (resolver != null) {
+            resolver.checkReturn(keyword, !check(TokenType.SEMICOLON));
+        }
         Expression expression = null;
         if (!check(TokenType.SEMICOLON)) {
             expression = lambda();
@@ -212,12 +488,21 @@ final class Parser {
     }
 
     private Statement expressionStatement() {
-        Expression expression = comma();
+        Expression expression;
+        if (precedenceClimbing) {
+            expression = parsePrecedence(Precedence.COMMA);
+        } else {
+            expression = comma();
+        }
         consume(TokenType.SEMICOLON, "Expect ';' after expression.");
         return new Statement.Expr(expression);
     }
 
     private Expression expression() {
+        if (precedenceClimbing) {
+            return parsePrecedence(Precedence.ASSIGNMENT);
+        }
+
         return assignment();
     }
 
@@ -242,7 +527,15 @@ final class Parser {
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
 
         consume(TokenType.LEFT_BRACE, "Expect '{' before lambda body.");
-        List<Statement> body = block();
+        List<Statement> body;
+        if (resolver != null) {
+            Resolver.FunctionType prevFunction =
+                resolver.beginFunction(params, Resolver.FunctionType.LAMBDA);
+            body = block();
+            resolver.endFunction(prevFunction);
+        } else {
+            body = block();
+        }
 
         return new Expression.Lambda(keyword, params, body);
     }
@@ -254,7 +547,7 @@ final class Parser {
             Expression right = assignment();
 
             if (left instanceof Expression.Variable v) {
-                return new Expression.Assign(v.name, right);
+                return assign(v, right);
             } else if (left instanceof Expression.Get get) {
                 return new Expression.Set(get.object, get.name, right);
             }
@@ -466,19 +759,127 @@ final class Parser {
             consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
             return new Expression.Grouping(expression);
         } else if (match(TokenType.IDENTIFIER)) {
-            return new Expression.Variable(previous());
+            Expression.Variable variable = new Expression.Variable(previous());
+            // a variable followed by '=' is the target of an assignment,
+            // or the assignment is invalid, it's resolved with the assignment
+            if (resolver != null && !check(TokenType.EQUAL)) {
+                resolver.resolveVariable(variable);
+            }
+            return variable;
         } else if (match(TokenType.THIS)) {
-            return new Expression.This(previous());
+            Expression.This expression = new Expression.This(previous());
+            if (resolver != null) {
+                resolver.resolveThis(expression);
+            }
+            return expression;
         } else if (match(TokenType.SUPER)) {
             Token keyword = previous();
             consume(TokenType.DOT, "Expect '.' after 'super'.");
-            return new Expression.Super(keyword,
+            Expression.Super expression = new Expression.Super(keyword,
                 consume(TokenType.IDENTIFIER, "Expect superclass method name."));
+            if (resolver != null) {
+                resolver.resolveSuper(expression);
+            }
+            return expression;
         } else {
             throw error(peek(), "Expect expression.");
         }
     }
 
+    private Expression assign(Expression.Variable target, Expression value) {
+        Expression.Assign assignment = new Expression.Assign(target.name, value);
+        if (resolver != null) {
+            resolver.resolveTarget(assignment);
+        }
+
+        return assignment;
+    }
+
+    private Expression parsePrecedence(Precedence precedence) {
+        return parsePrecedence(precedence, precedence);
+    }
+
+    // missingLeft is the lowest precedence of the operators
+    // which are reported if found in place of the left operand,
+    // for right operands it is the precedence of their operator
+    private Expression parsePrecedence(Precedence precedence, Precedence missingLeft) {
+        Expression left = prefix(missingLeft);
+        while (true) {
+            Token operator = peek();
+            Precedence operatorPrecedence = INFIX_PRECEDENCE[operator.type.ordinal()];
+            if (operatorPrecedence == Precedence.NONE
+                    || operatorPrecedence.compareTo(precedence) < 0) {
+                return left;
+            }
+
+            advance();
+            left = infix(left, operator, operatorPrecedence);
+        }
+    }
+
+    private Expression prefix(Precedence missingLeft) {
+        Token token = peek();
+        Precedence precedence = INFIX_PRECEDENCE[token.type.ordinal()];
+        if (MISSING_LEFT[token.type.ordinal()] && precedence.compareTo(missingLeft) >= 0) {
+            advance();
+            parsePrecedence(precedence.next());
+            throw error(token, "Expect left-hand operand.");
+        }
+
+        // operators are collected first, so long chains don't need recursion
+        int operators = current;
+        while (check(TokenType.BANG) || check(TokenType.MINUS)) {
+            advance();
+        }
+        int operand = current;
+
+        Expression expression = call();
+        for (int i = operand - 1; i >= operators; i--) {
+            expression = new Expression.Unary(tokens.get(i), expression);
+        }
+
+        return expression;
+    }
+
+    private Expression infix(Expression left, Token operator, Precedence precedence) {
+        switch (operator.type) {
+            case EQUAL -> {
+                Expression right = parsePrecedence(Precedence.ASSIGNMENT);
+                if (left instanceof Expression.Variable v) {
+                    return assign(v, right);
+                } else if (left instanceof Expression.Get get) {
+                    return new Expression.Set(get.object, get.name, right);
+                }
+
+                error(operator, "Invalid assignment target.");
+                return left;
+            }
+            case QUESTION -> {
+                Expression middle = parsePrecedence(Precedence.TERNARY);
+                consume(TokenType.COLON, "Expect ':' after expression.");
+                Expression right = parsePrecedence(Precedence.TERNARY);
+                return new Expression.Ternary(left, middle, right);
+            }
+            case OR, AND -> {
+                Expression right = parsePrecedence(precedence.next(), precedence);
+                return new Expression.Logical(operator, left, right);
+            }
+            default -> {
+                Expression right = parsePrecedence(precedence.next(), precedence);
+                return new Expression.Binary(operator, left, right);
+            }
+        }
+    }
+
+    private boolean match(TokenType tokenType) {
+        if (check(tokenType)) {
+            advance();
+            return true;
+        }
+
+        return false;
+    }
+
     private boolean match(TokenType... tokenTypes) {
         for (TokenType tokenType : tokenTypes) {
             if (check(tokenType)) {
@@ -494,6 +895,14 @@ final class Parser {
         return hasMoreTokens() && peek().type == tokenType;
     }
 
+    private boolean checkNext(TokenType tokenType) {
+        return hasMoreTokens() && tokens.get(current + 1).type == tokenType;
+    }
+
+    private boolean checkContextual(String keyword) {
+        return check(TokenType.IDENTIFIER) && peek().lexeme.equals(keyword);
+    }
+
     private Token advance() {
         if (hasMoreTokens()) {
             current++;
@@ -523,7 +932,8 @@ final class Parser {
     }
 
     private ParseException error(Token token, String msg) {
-        Lox.error(token, msg);
+        hadError = true;
+        reporter.error(token, msg);
         return new ParseException();
     }
 
@@ -536,6 +946,7 @@ final class Parser {
 
             switch (peek().type) {
                 case CLASS:
+                case IMPORT:
                 case FOR:
                 case FUN:
                 case IF:
@@ -550,5 +961,8 @@ final class Parser {
         }
     }
 
-    private static class ParseException extends RuntimeException { }
+    private static class ParseException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
 }
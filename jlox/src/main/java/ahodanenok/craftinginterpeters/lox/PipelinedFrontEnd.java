@@ -0,0 +1,201 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Scans, parses and resolves a source with each phase running
+// on its own thread. Tokens and parsed declarations are passed
+// between the phases in batches through bounded queues.
+//
+// Errors are collected per phase and reported after all of them
+// have finished, in the same order as running the phases one
+// after another would report them.
+//
+// If a phase fails, the others are aborted: a phase waiting on
+// a queue checks the flag every few milliseconds and stops, so
+// no thread is left waiting for a phase which is gone.
+final class PipelinedFrontEnd {
+
+    private static final int TOKEN_BATCH_SIZE = 1024;
+    private static final int STATEMENT_BATCH_SIZE = 64;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long WAIT_MILLIS = 10;
+
+    private final String source;
+    private final Diagnostics scanErrors;
+    private final Diagnostics parseErrors;
+    private final Diagnostics resolveErrors;
+    private final BlockingQueue<List<Token>> tokens;
+    private final BlockingQueue<List<Statement>> statements;
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+
+    PipelinedFrontEnd(String source) {
+        this.source = source;
+        this.scanErrors = new Diagnostics();
+        this.parseErrors = new Diagnostics();
+        this.resolveErrors = new Diagnostics();
+        this.tokens = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.statements = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    }
+
+    // returns the resolved program, resolution runs on the calling thread
+    List<Statement> analyze() {
+        start("lox-scanner", this::scan);
+        start("lox-parser", this::parse);
+
+        List<Statement> program = new ArrayList<>();
+        Resolver resolver = new Resolver(resolveErrors);
+        try {
+            while (true) {
+                List<Statement> batch = take(statements);
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                resolver.resolve(batch);
+                program.addAll(batch);
+            }
+        } catch (CancellationException e) {
+            // another phase failed
+        } finally {
+            // the phases still running stop, i.e. if resolution failed
+            aborted = true;
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+
+        return program;
+    }
+
+    boolean hadError() {
+        return scanErrors.hasErrors() || parseErrors.hasErrors() || resolveErrors.hasErrors();
+    }
+
+    void reportErrors(ErrorReporter reporter) {
+        scanErrors.reportTo(reporter);
+        parseErrors.reportTo(reporter);
+        if (scanErrors.hasErrors() || parseErrors.hasErrors()) {
+            return;
+        }
+
+        resolveErrors.reportTo(reporter);
+    }
+
+    // the last batch ends with EOF
+    private void scan() {
+        Scanner scanner = new Scanner(source, scanErrors);
+        List<Token> batch = new ArrayList<>(TOKEN_BATCH_SIZE);
+        try {
+            Token token;
+            while ((token = scanner.nextToken()) != null) {
+                batch.add(token);
+                if (batch.size() == TOKEN_BATCH_SIZE) {
+                    put(tokens, batch);
+                    batch = new ArrayList<>(TOKEN_BATCH_SIZE);
+                }
+            }
+        } finally {
+            batch.add(new Token(TokenType.EOF, "", null, scanner.line()));
+            put(tokens, batch);
+        }
+    }
+
+    // the last batch is empty
+    private void parse() {
+        List<Statement> batch = new ArrayList<>(STATEMENT_BATCH_SIZE);
+        try {
+            TokenStream stream = new TokenStream(new BatchedTokens());
+            Parser parser = new Parser(stream, parseErrors).precedenceClimbing(true);
+            while (parser.hasMoreDeclarations()) {
+                Statement statement = parser.parseDeclaration();
+                stream.dropBefore(parser.position());
+                // trees can be incomplete after a parse error, the rest of the source
+                // is parsed only to report errors, as the program won't be executed
+                if (parseErrors.hasErrors()) {
+                    continue;
+                }
+
+                batch.add(statement);
+                if (batch.size() == STATEMENT_BATCH_SIZE) {
+                    put(statements, batch);
+                    batch = new ArrayList<>(STATEMENT_BATCH_SIZE);
+                }
+            }
+        } finally {
+            if (!batch.isEmpty()) {
+                put(statements, batch);
+            }
+            put(statements, List.of());
+        }
+    }
+
+    private void start(String name, Runnable phase) {
+        Thread thread = new Thread(() -> {
+            try {
+                phase.run();
+            } catch (CancellationException e) {
+                // another phase failed
+            } catch (Throwable e) {
+                failure = e;
+                aborted = true;
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T batch) {
+        try {
+            while (!queue.offer(batch, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAborted();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T take(BlockingQueue<T> queue) {
+        try {
+            T batch;
+            while ((batch = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkAborted();
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void checkAborted() {
+        if (aborted) {
+            throw new CancellationException();
+        }
+    }
+
+    // tokens taken from the scanner's batches one by one
+    private final class BatchedTokens implements Supplier<Token> {
+
+        private List<Token> batch = List.of();
+        private int index;
+
+        @Override
+        public Token get() {
+            if (index == batch.size()) {
+                batch = take(tokens);
+                index = 0;
+            }
+
+            return batch.get(index++);
+        }
+    }
+}
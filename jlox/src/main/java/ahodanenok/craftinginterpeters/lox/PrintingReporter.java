@@ -0,0 +1,36 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+// prints errors in the format expected by the test suite
+class PrintingReporter implements ErrorReporter {
+
+    private final PrintStream err;
+
+    PrintingReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    @Override
+    public void error(int line, String msg) {
+        report(line, "", msg);
+    }
+
+    @Override
+    public void error(Token token, String msg) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", msg);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", msg);
+        }
+    }
+
+    @Override
+    public void runtimeError(Token token, String msg) {
+        err.println(msg + "\n[line " + token.line + "]");
+    }
+
+    void report(int line, String where, String msg) {
+        err.println(String.format("[line %d] Error%s: %s", line, where, msg));
+    }
+}
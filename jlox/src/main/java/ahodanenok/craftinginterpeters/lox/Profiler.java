@@ -0,0 +1,113 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// A sampling profiler of Lox code. Profiled interpreters keep a stack of the functions
+// they are calling, made of immutable frames, so a background thread can read it at
+// any time without stopping them. The stacks are counted each time they are sampled,
+// including the time spent waiting, i.e. joining tasks, and written in the collapsed
+// format read by flame graph tools:
+//     <script>;main:12;fib:1 42
+final class Profiler {
+
+    private final long intervalNanos;
+    private final Set<Interpreter> interpreters = Collections.synchronizedSet(
+        Collections.newSetFromMap(new WeakHashMap<>()));
+    // accessed only by the sampler until it's stopped
+    private final Map<String, Long> samples = new HashMap<>();
+    private Thread sampler;
+    private volatile boolean stopped;
+
+    Profiler(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    void register(Interpreter interpreter) {
+        interpreters.add(interpreter);
+    }
+
+    void start() {
+        sampler = new Thread(this::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() throws InterruptedException {
+        stopped = true;
+        sampler.join();
+    }
+
+    private void sample() {
+        StringBuilder stack = new StringBuilder();
+        List<Interpreter> active = new ArrayList<>();
+        while (!stopped) {
+            LockSupport.parkNanos(intervalNanos);
+            active.clear();
+            synchronized (interpreters) {
+                active.addAll(interpreters);
+            }
+
+            for (Interpreter interpreter : active) {
+                Frame frame = interpreter.frame();
+                if (frame != null) {
+                    stack.setLength(0);
+                    frame.appendTo(stack);
+                    samples.merge(stack.toString(), 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    // the most sampled stacks first, must be called after stop
+    void write(PrintStream out) {
+        samples.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> out.println(entry.getKey() + " " + entry.getValue()));
+    }
+
+    // a function is labeled with the line it's declared at,
+    // telling apart the functions with the same name
+    static String label(Object function) {
+        if (function instanceof LoxFunction f) {
+            return f.declaration.name.lexeme + ":" + f.declaration.name.line;
+        } else if (function instanceof LoxLambda f) {
+            return "<lambda>:" + f.declaration.keyword.line;
+        } else if (function instanceof LoxClass c) {
+            return c.name;
+        } else {
+            // separators in names of native and host functions
+            return String.valueOf(function).replace(';', ',');
+        }
+    }
+
+    // a function being called, or a place the interpreter started executing code at,
+    // such as the top level of a script
+    static final class Frame {
+
+        final Object function;
+        final Frame caller;
+
+        Frame(Object function, Frame caller) {
+            this.function = function;
+            this.caller = caller;
+        }
+
+        // the frames from the outermost one, separated with ';'
+        private void appendTo(StringBuilder stack) {
+            if (caller != null) {
+                caller.appendTo(stack);
+                stack.append(';');
+            }
+            stack.append(label(function));
+        }
+    }
+}
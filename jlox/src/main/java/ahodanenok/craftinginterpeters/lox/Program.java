@@ -0,0 +1,24 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// A compiled program: resolved statements along with the directory its modules
+// are imported from. The resolved depths are stored in the nodes before the program
+// is created and nothing changes them after, so the final fields make the whole tree
+// safely visible to any thread executing it. Function bodies parsed lazily are
+// parsed and resolved under a lock on the first call. The only exception is the
+// cache field of Get and Set, written at run time by any thread accessing a host
+// member without synchronization. A thread may see an older entry or none and looks
+// the member up again, it never sees a partly built one, as the cached Site is an
+// immutable record whose final fields are visible once its reference is.
+public final class Program {
+
+    final List<Statement> statements;
+    final Path directory;
+
+    Program(List<Statement> statements, Path directory) {
+        this.statements = List.copyOf(statements);
+        this.directory = directory;
+    }
+}
@@ -0,0 +1,103 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+// Resolved programs stored in a directory, one file per source named
+// after the SHA-256 hash of the source. A file starts with a header
+// holding the format version and the hash, then goes the program
+// as written by AstWriter.
+final class ProgramCache {
+
+    private static final int MAGIC = 0x4C4F5843; // LOXC
+    private static final int VERSION = 3;
+    private static final String EXTENSION = ".loxc";
+
+    private final Path directory;
+
+    ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // returns null if the source wasn't cached or the cached file can't be read
+    List<Statement> load(String source) {
+        byte[] hash = hash(source);
+        Path path = path(hash);
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            byte[] storedHash = new byte[hash.length];
+            buffer.get(storedHash);
+            if (!Arrays.equals(hash, storedHash)) {
+                return null;
+            }
+
+            return new AstReader(buffer.slice()).read();
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    // the file is written under a temporary name and then moved,
+    // so concurrent runs never see a partially written program
+    void store(String source, List<Statement> program) throws IOException {
+        byte[] hash = hash(source);
+        byte[] data = new AstWriter().write(program);
+
+        ByteBuffer header = ByteBuffer.allocate(8 + hash.length);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put(hash);
+        header.flip();
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "lox", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer body = ByteBuffer.wrap(data);
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[] { header, body });
+                }
+            }
+            Files.move(temp, path(hash),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path path(byte[] hash) {
+        return directory.resolve(HexFormat.of().formatHex(hash) + EXTENSION);
+    }
+
+    private static byte[] hash(String source) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(source.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
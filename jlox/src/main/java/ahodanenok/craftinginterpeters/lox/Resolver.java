@@ -1,13 +1,15 @@
 package ahodanenok.craftinginterpreters.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
 
-    private enum FunctionType {
+    enum FunctionType {
 
         NONE,
         FUNCTION,
@@ -16,21 +18,33 @@ class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
         INITIALIZER;
     }
 
-    private enum ClassType {
+    enum ClassType {
 
         NONE,
         CLASS,
         SUBCLASS;
     }
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes;
+    private final ErrorReporter reporter;
+    private final Scopes scopes;
     private FunctionType currentFunction;
     private ClassType currentClass;
+    // the innermost parallel loop, its body may be in an enclosing function
+    private ParallelLoop parallelLoop;
+    // directly in the body of a parallel loop, not in a nested loop or function
+    private boolean inParallelBody;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
-        this.scopes = new Stack<>();
+    Resolver() {
+        this(Lox.reporter);
+    }
+
+    Resolver(ErrorReporter reporter) {
+        this(reporter, new Scopes());
+    }
+
+    private Resolver(ErrorReporter reporter, Scopes scopes) {
+        this.reporter = reporter;
+        this.scopes = scopes;
         this.currentFunction = FunctionType.NONE;
         this.currentClass = ClassType.NONE;
     }
@@ -83,16 +97,8 @@ class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
 
     @Override
     public Void visitReturnStatement(Statement.Return statement) {
-        if (currentFunction == FunctionType.NONE) {
-            Lox.error(statement.keyword, "Can't return from top-level code.");
-        }
-
+        checkReturn(statement.keyword, statement.expression != null);
         if (statement.expression != null) {
-            if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(statement.keyword,
-                    "Can't return a value from an initializer.");
-            }
-
             resolve(statement.expression);
         }
         return null;
@@ -101,53 +107,68 @@ class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
     @Override
     public Void visitWhileStatement(Statement.While statement) {
         resolve(statement.condition);
+        boolean enclosingParallelBody = inParallelBody;
+        inParallelBody = false;
         resolve(statement.body);
+        inParallelBody = enclosingParallelBody;
         return null;
     }
 
     @Override
     public Void visitBreakStatement(Statement.Break statement) {
+        if (inParallelBody) {
+            reporter.error(statement.keyword, "Can't break out of a parallel loop.");
+        }
         return null;
     }
 
     @Override
     public Void visitClassStatement(Statement.Class statement) {
-        declare(statement.name);
-        define(statement.name);
-
-        ClassType prevClass = currentClass;
-        currentClass = ClassType.CLASS;
+        ClassType prevClass = beginClass(statement.name, statement.parent);
+        for (Statement.Function method : statement.methods) {
+            resolveFunction(method, methodType(method.name));
+        }
+        endClass(statement.parent != null, prevClass);
 
-        if (statement.parent != null) {
-            if (statement.parent.name.lexeme.equals(statement.name.lexeme)) {
-                Lox.error(statement.parent.name, "A class can't inherit from itself.");
-            }
+        return null;
+    }
 
-            currentClass = ClassType.SUBCLASS;
-            resolve(statement.parent);
+    @Override
+    public Void visitImportStatement(Statement.Import statement) {
+        checkImport(statement.keyword);
+        return null;
+    }
 
-            beginScope();
-            scopes.peek().put("super", true);
+    // The loop variable and a private copy of each reduction variable are declared
+    // in the scope of the loop. Iterations run concurrently, so the body can assign
+    // only the variables declared in it and the reduction variables.
+    @Override
+    public Void visitParallelForStatement(Statement.ParallelFor statement) {
+        resolve(statement.from);
+        resolve(statement.to);
+        for (Expression.Variable reduction : statement.reductions) {
+            resolveVariable(reduction);
         }
 
         beginScope();
-        scopes.peek().put("this", true);
-        for (Statement.Function method : statement.methods) {
-            FunctionType declaration;
-            if (method.name.lexeme.equals("init")) {
-                declaration = FunctionType.INITIALIZER;
-            } else {
-                declaration = FunctionType.METHOD;
-            }
-
-            resolveFunction(method, declaration);
-        }
-        endScope();
-        if (statement.parent != null) {
-            endScope();
+        for (Expression.Variable reduction : statement.reductions) {
+            declare(reduction.name);
+            define(reduction.name);
         }
-        currentClass = prevClass;
+        declare(statement.variable);
+        define(statement.variable);
+
+        ParallelLoop enclosingLoop = parallelLoop;
+        boolean enclosingParallelBody = inParallelBody;
+        parallelLoop = new ParallelLoop(scopes.size() - 1, statement.reductions.stream()
+            .map(reduction -> reduction.name.lexeme)
+            .collect(Collectors.toSet()));
+        inParallelBody = true;
+        resolve(statement.body);
+        parallelLoop = enclosingLoop;
+        inParallelBody = enclosingParallelBody;
 
+        endScope();
         return null;
     }
 
@@ -159,33 +180,20 @@ class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
 
     @Override
     public Void visitVariableExpression(Expression.Variable variable) {
-        if (!scopes.isEmpty()
-                && scopes.peek().get(variable.name.lexeme) == Boolean.FALSE) {
-            Lox.error(variable.name, "Can't read local variable in its own initializer.");
-        }
-        resolveLocal(variable, variable.name);
+        resolveVariable(variable);
         return null;
     }
 
     @Override
     public Void visitAssignExpression(Expression.Assign assignment) {
         resolve(assignment.expression);
-        resolveLocal(assignment, assignment.name);
+        resolveTarget(assignment);
         return null;
     }
 
     @Override
     public Void visitLambdaExpression(Expression.Lambda lambda) {
-        FunctionType prevFunction = currentFunction;
-        currentFunction = FunctionType.LAMBDA;
-        beginScope();
-        for (Token param : lambda.params) {
-            declare(param);
-            define(param);
-        }
-        resolve(lambda.body);
-        endScope();
-        currentFunction = prevFunction;
+        resolveFunction(lambda.params, lambda.body, FunctionType.LAMBDA);
         return null;
     }
 
@@ -252,86 +260,331 @@ class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
 
     @Override
     public Void visitThisExpression(Expression.This expression) {
+        resolveThis(expression);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpression(Expression.Super expression) {
+        resolveSuper(expression);
+        return null;
+    }
+
+    // The methods below resolve a single node or a part of a declaration,
+    // they are also called by the parser when it resolves nodes as they
+    // are created. Nested nodes are resolved separately.
+
+    void resolveVariable(Expression.Variable variable) {
+        if (!scopes.isEmpty() && scopes.isUndefined(variable.name.lexeme)) {
+            reporter.error(variable.name, "Can't read local variable in its own initializer.");
+        }
+        variable.depth = resolveLocal(variable.name);
+    }
+
+    // the assigned value is resolved before the target
+    void resolveTarget(Expression.Assign assignment) {
+        assignment.depth = resolveLocal(assignment.name);
+        if (parallelLoop != null) {
+            int scope = assignment.depth >= 0 ? scopes.size() - 1 - assignment.depth : -1;
+            if (scope < parallelLoop.scope || scope == parallelLoop.scope
+                    && !parallelLoop.reductions.contains(assignment.name.lexeme)) {
+                reporter.error(assignment.name,
+                    "Can't assign to a variable declared outside of a parallel loop, except a reduction variable.");
+            }
+        }
+    }
+
+    void resolveThis(Expression.This expression) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expression.keyword,
+            reporter.error(expression.keyword,
                 "Can't use 'this' outside of a class.");
-            return null;
+            return;
         }
 
-        resolveLocal(expression, expression.keyword);
-        return null;
+        expression.depth = resolveLocal(expression.keyword);
     }
 
-    @Override
-    public Void visitSuperExpression(Expression.Super expression) {
+    void resolveSuper(Expression.Super expression) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expression.keyword,
+            reporter.error(expression.keyword,
                 "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expression.keyword,
+            reporter.error(expression.keyword,
                 "Can't use 'super' in a class with no superclass.");
         }
 
-        resolveLocal(expression, expression.keyword);
-        return null;
+        expression.depth = resolveLocal(expression.keyword);
+    }
+
+    // checked before the returned value is resolved
+    void checkReturn(Token keyword, boolean hasValue) {
+        if (currentFunction == FunctionType.NONE) {
+            reporter.error(keyword, "Can't return from top-level code.");
+        } else if (inParallelBody) {
+            reporter.error(keyword, "Can't return from a parallel loop.");
+        }
+
+        if (hasValue && currentFunction == FunctionType.INITIALIZER) {
+            reporter.error(keyword, "Can't return a value from an initializer.");
+        }
+    }
+
+    // modules define globals, so they are imported only by top-level code
+    void checkImport(Token keyword) {
+        if (!scopes.isEmpty()) {
+            reporter.error(keyword, "Can't import a module inside a block or function.");
+        }
     }
 
-    private void declare(Token name) {
+    // declares the class and begins scopes of its methods,
+    // returns the type of the enclosing class to pass to endClass
+    ClassType beginClass(Token name, Expression.Variable parent) {
+        declare(name);
+        define(name);
+
+        ClassType prevClass = currentClass;
+        currentClass = ClassType.CLASS;
+
+        if (parent != null) {
+            if (parent.name.lexeme.equals(name.lexeme)) {
+                reporter.error(parent.name, "A class can't inherit from itself.");
+            }
+
+            currentClass = ClassType.SUBCLASS;
+            resolve(parent);
+
+            beginScope();
+            scopes.put("super", true);
+        }
+
+        beginScope();
+        scopes.put("this", true);
+
+        return prevClass;
+    }
+
+    void endClass(boolean hasParent, ClassType prevClass) {
+        endScope();
+        if (hasParent) {
+            endScope();
+        }
+        currentClass = prevClass;
+    }
+
+    FunctionType methodType(Token name) {
+        return name.lexeme.equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+    }
+
+    // begins the scope of the function body and declares its parameters,
+    // returns the type of the enclosing function to pass to endFunction
+    FunctionType beginFunction(List<Token> params, FunctionType type) {
+        FunctionType prevFunction = currentFunction;
+        currentFunction = type;
+        beginScope();
+        for (Token param : params) {
+            declare(param);
+            define(param);
+        }
+
+        return prevFunction;
+    }
+
+    void endFunction(FunctionType prevFunction) {
+        endScope();
+        currentFunction = prevFunction;
+    }
+
+    void declare(Token name) {
         if (scopes.isEmpty()) {
             return;
         }
 
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Already a variable with this name in this scope.");
+        if (scopes.isDeclared(name.lexeme)) {
+            reporter.error(name, "Already a variable with this name in this scope.");
         }
 
-        scope.put(name.lexeme, false);
+        scopes.put(name.lexeme, false);
     }
 
-    private void define(Token name) {
+    void define(Token name) {
         if (scopes.isEmpty()) {
             return;
         }
 
-        scopes.peek().put(name.lexeme, true);
+        scopes.put(name.lexeme, true);
     }
 
-    private void beginScope() {
-        scopes.push(new HashMap<>());
+    void beginScope() {
+        scopes.begin();
     }
 
-    private void endScope() {
-        scopes.pop();
+    void endScope() {
+        scopes.end();
     }
 
-    private void resolve(Statement statement) {
+    void resolve(Statement statement) {
         statement.accept(this);
     }
 
-    private void resolve(Expression expression) {
+    void resolve(Expression expression) {
         expression.accept(this);
     }
 
-    private void resolveLocal(Expression expression, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expression, scopes.size() - i - 1);
+    // returns -1 for globals
+    private int resolveLocal(Token name) {
+        return scopes.distance(name.lexeme);
+    }
+
+    private void resolveFunction(Statement.Function function, FunctionType type) {
+        if (function.body instanceof LazyFunctionBody body && !body.isParsed()) {
+            resolveLater(body, function.params, type);
+        } else {
+            resolveFunction(function.params, function.body, type);
+        }
+    }
+
+    private void resolveFunction(List<Token> params, List<Statement> body, FunctionType type) {
+        boolean enclosingParallelBody = inParallelBody;
+        inParallelBody = false;
+        FunctionType prevFunction = beginFunction(params, type);
+        resolve(body);
+        endFunction(prevFunction);
+        inParallelBody = enclosingParallelBody;
+    }
+
+    // the body will be resolved in a copy of the scopes
+    // as they are now, later declarations are not visible to it
+    void resolveLater(LazyFunctionBody body, List<Token> params, FunctionType type) {
+        Scopes enclosingScopes = scopes.copy();
+        ClassType enclosingClass = currentClass;
+        ParallelLoop enclosingLoop = parallelLoop;
+
+        body.resolveWith((statements, reporter) -> {
+            Resolver resolver = new Resolver(reporter, enclosingScopes);
+            resolver.currentClass = enclosingClass;
+            resolver.parallelLoop = enclosingLoop;
+            resolver.resolveFunction(params, statements, type);
+        });
+    }
+
+    // index of the scope of a parallel loop and its reduction variables
+    private record ParallelLoop(int scope, Set<String> reductions) { }
+
+    // Names declared in the enclosing scopes, kept in one array in the order
+    // of declaration with the start of each scope marked. Every name maps to its
+    // latest declaration, which links to the declaration it shadows, so a name
+    // is resolved without looking through the scopes.
+    private static final class Scopes {
+
+        private String[] names;
+        private boolean[] defined;
+        // index of the scope a name was declared in
+        private int[] scopeIndex;
+        // previous declaration of the same name, -1 if none
+        private int[] shadowed;
+        private int count;
+        // index of the first name in each scope
+        private int[] starts;
+        private int size;
+        private final Map<String, Integer> latest;
+
+        Scopes() {
+            this.names = new String[16];
+            this.defined = new boolean[16];
+            this.scopeIndex = new int[16];
+            this.shadowed = new int[16];
+            this.starts = new int[8];
+            this.latest = new HashMap<>();
+        }
+
+        private Scopes(Scopes scopes) {
+            this.names = Arrays.copyOf(scopes.names, scopes.names.length);
+            this.defined = Arrays.copyOf(scopes.defined, scopes.defined.length);
+            this.scopeIndex = Arrays.copyOf(scopes.scopeIndex, scopes.scopeIndex.length);
+            this.shadowed = Arrays.copyOf(scopes.shadowed, scopes.shadowed.length);
+            this.count = scopes.count;
+            this.starts = Arrays.copyOf(scopes.starts, scopes.starts.length);
+            this.size = scopes.size;
+            this.latest = new HashMap<>(scopes.latest);
+        }
+
+        Scopes copy() {
+            return new Scopes(this);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void begin() {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            starts[size++] = count;
+        }
+
+        void end() {
+            int start = starts[--size];
+            for (int i = count - 1; i >= start; i--) {
+                if (shadowed[i] < 0) {
+                    latest.remove(names[i]);
+                } else {
+                    latest.put(names[i], shadowed[i]);
+                }
+                names[i] = null;
+            }
+            count = start;
+        }
+
+        // declared in the innermost scope
+        boolean isDeclared(String name) {
+            return innermost(name) >= 0;
+        }
+
+        // declared in the innermost scope, but not defined yet
+        boolean isUndefined(String name) {
+            int i = innermost(name);
+            return i >= 0 && !defined[i];
+        }
+
+        // declares the name in the innermost scope
+        void put(String name, boolean isDefined) {
+            int i = innermost(name);
+            if (i >= 0) {
+                defined[i] = isDefined;
                 return;
             }
+
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                defined = Arrays.copyOf(defined, count * 2);
+                scopeIndex = Arrays.copyOf(scopeIndex, count * 2);
+                shadowed = Arrays.copyOf(shadowed, count * 2);
+            }
+
+            Integer previous = latest.get(name);
+            names[count] = name;
+            defined[count] = isDefined;
+            scopeIndex[count] = size - 1;
+            shadowed[count] = previous != null ? previous : -1;
+            latest.put(name, count);
+            count++;
         }
-    }
 
-    private void resolveFunction(Statement.Function function, FunctionType type) {
-        FunctionType prevFunction = currentFunction;
-        currentFunction = type;
-        beginScope();
-        for (Token param : function.params) {
-            declare(param);
-            define(param);
+        // number of scopes between the innermost one and the one
+        // the name is declared in, -1 if it isn't declared in any
+        int distance(String name) {
+            Integer i = latest.get(name);
+            return i != null ? size - 1 - scopeIndex[i] : -1;
+        }
+
+        private int innermost(String name) {
+            Integer i = latest.get(name);
+            return i != null && i >= starts[size - 1] ? i : -1;
         }
-        resolve(function.body);
-        endScope();
-        currentFunction = prevFunction;
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,8 @@ package ahodanenok.craftinginterpreters.lox;
 
 class Return extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
+
     final Object value;
 
     Return(Object value) {
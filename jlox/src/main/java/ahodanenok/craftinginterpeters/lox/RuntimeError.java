@@ -2,10 +2,20 @@ package ahodanenok.craftinginterpreters.lox;
 
 class RuntimeError extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
+
     final Token token;
 
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        if (Events.FAILURE.isEnabled()) {
+            Events.Failure event = new Events.Failure();
+            if (event.shouldCommit()) {
+                event.message = message;
+                event.line = token != null ? token.line : -1;
+                event.commit();
+            }
+        }
     }
 }
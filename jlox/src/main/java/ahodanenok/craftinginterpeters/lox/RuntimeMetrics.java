@@ -0,0 +1,124 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Each interpreter of a runtime counts in its own fields, without synchronization,
+// so the counters are never contended. They are summed when read, a running
+// interpreter may be read a bit behind. When an interpreter of a task is done,
+// its counts are moved to the totals here.
+final class RuntimeMetrics implements LoxRuntimeMXBean {
+
+    // written only by the thread running its interpreter
+    static final class Counters {
+
+        long statements;
+        long calls;
+        long environments;
+        long instances;
+        long runtimeErrors;
+    }
+
+    private final Set<Counters> running = ConcurrentHashMap.newKeySet();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder environments = new LongAdder();
+    private final LongAdder instances = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+
+    // the front end of a runtime is used by one thread at a time
+    private volatile long scanNanos;
+    private volatile long parseNanos;
+    private volatile long resolveNanos;
+
+    Counters newCounters() {
+        Counters counters = new Counters();
+        running.add(counters);
+        return counters;
+    }
+
+    // removed before it's added to the totals, so a concurrent read may miss the counts
+    // of the interpreter for a moment, but never counts them twice
+    void retire(Counters counters) {
+        running.remove(counters);
+        statements.add(counters.statements);
+        calls.add(counters.calls);
+        environments.add(counters.environments);
+        instances.add(counters.instances);
+        runtimeErrors.add(counters.runtimeErrors);
+    }
+
+    void addScanTime(long nanos) {
+        scanNanos += nanos;
+    }
+
+    void addParseTime(long nanos) {
+        parseNanos += nanos;
+    }
+
+    void addResolveTime(long nanos) {
+        resolveNanos += nanos;
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        long sum = statements.sum();
+        for (Counters counters : running) {
+            sum += counters.statements;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getCalls() {
+        long sum = calls.sum();
+        for (Counters counters : running) {
+            sum += counters.calls;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getEnvironmentsAllocated() {
+        long sum = environments.sum();
+        for (Counters counters : running) {
+            sum += counters.environments;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getInstancesCreated() {
+        long sum = instances.sum();
+        for (Counters counters : running) {
+            sum += counters.instances;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        long sum = runtimeErrors.sum();
+        for (Counters counters : running) {
+            sum += counters.runtimeErrors;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getScanTime() {
+        return TimeUnit.NANOSECONDS.toMillis(scanNanos);
+    }
+
+    @Override
+    public long getParseTime() {
+        return TimeUnit.NANOSECONDS.toMillis(parseNanos);
+    }
+
+    @Override
+    public long getResolveTime() {
+        return TimeUnit.NANOSECONDS.toMillis(resolveNanos);
+    }
+}
@@ -1,6 +1,7 @@
 package ahodanenok.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,32 +28,77 @@ final class Scanner {
         KEYWORDS.put("var", TokenType.VAR);
         KEYWORDS.put("while", TokenType.WHILE);
         KEYWORDS.put("break", TokenType.BREAK);
+        KEYWORDS.put("import", TokenType.IMPORT);
     }
 
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens;
+    // start offsets of the scanned tokens
+    private int[] offsets;
     private int current;
     private int start;
     private int line;
 
     public Scanner(String source) {
+        this(source, Lox.reporter);
+    }
+
+    Scanner(String source, ErrorReporter reporter) {
+        this(source, 0, 1, reporter);
+    }
+
+    Scanner(String source, int position, int line, ErrorReporter reporter) {
         this.source = source;
+        this.reporter = reporter;
         this.tokens = new ArrayList<>();
-        this.current = 0;
-        this.start = 0;
-        this.line = 1;
+        this.offsets = new int[16];
+        this.current = position;
+        this.start = position;
+        this.line = line;
     }
 
     public List<Token> scan() {
-        while (!isEnded()) {
+        scanUntil(source.length());
+        tokens.add(new Token(TokenType.EOF, "", null, line));
+
+        return tokens;
+    }
+
+    // scans tokens starting before the given offset,
+    // the last one can end past it (i.e. strings and block comments)
+    List<Token> scanUntil(int end) {
+        while (current < end) {
             start = current;
             scanToken();
         }
-        tokens.add(new Token(TokenType.EOF, "", null, line));
 
         return tokens;
     }
 
+    // scans the next token without keeping it, returns null at the end of the source
+    Token nextToken() {
+        tokens.clear();
+        while (tokens.isEmpty() && current < source.length()) {
+            start = current;
+            scanToken();
+        }
+
+        return tokens.isEmpty() ? null : tokens.get(0);
+    }
+
+    int position() {
+        return current;
+    }
+
+    int line() {
+        return line;
+    }
+
+    int offset(int index) {
+        return offsets[index];
+    }
+
     private void scanToken() {
         char ch = advance();
         switch (ch) {
@@ -94,7 +140,7 @@ final class Scanner {
                 } else if (isLetter(ch)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
             }
         }
@@ -150,6 +196,10 @@ final class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
+        if (tokens.size() == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[tokens.size()] = start;
         tokens.add(new Token(type, currentLexeme(), literal, line));
     }
 
@@ -189,7 +239,7 @@ final class Scanner {
         }
 
         if (peek() != '"') {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
         advance(); // consume "
@@ -25,6 +25,10 @@ abstract class Statement {
         R visitReturnStatement(Return statement);
 
         R visitClassStatement(Class statement);
+
+        R visitImportStatement(Import statement);
+
+        R visitParallelForStatement(ParallelFor statement);
     }
 
     final static class Expr extends Statement {
@@ -105,10 +109,12 @@ abstract class Statement {
 
     final static class While extends Statement {
 
+        final Token keyword;
         final Expression condition;
         final Statement body;
 
-        While(Expression condition, Statement body) {
+        While(Token keyword, Expression condition, Statement body) {
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
@@ -184,4 +190,46 @@ abstract class Statement {
             return visitor.visitClassStatement(this);
         }
     }
+
+    final static class Import extends Statement {
+
+        final Token keyword;
+        final Token path;
+
+        Import(Token keyword, Token path) {
+            this.keyword = keyword;
+            this.path = path;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStatement(this);
+        }
+    }
+
+    final static class ParallelFor extends Statement {
+
+        final Token keyword;
+        final Token variable;
+        final Expression from;
+        final Expression to;
+        final java.util.List<Token> operators;
+        final java.util.List<Expression.Variable> reductions;
+        final Statement body;
+
+        ParallelFor(Token keyword, Token variable, Expression from, Expression to, java.util.List<Token> operators, java.util.List<Expression.Variable> reductions, Statement body) {
+            this.keyword = keyword;
+            this.variable = variable;
+            this.from = from;
+            this.to = to;
+            this.operators = operators;
+            this.reductions = reductions;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitParallelForStatement(this);
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
+// Runs the tasks spawned by Lox programs. On a JVM with virtual threads each task
+// runs on its own virtual thread, so thousands of tasks waiting on channels or I/O
+// share a few carrier threads. On Java 17 they run on a cached pool of daemon threads.
+// Forked tasks are for computations and run on a work-stealing pool, one thread per core.
+final class Tasks {
+
+    static final ExecutorService EXECUTOR = createExecutor();
+    static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private Tasks() { }
+
+    private static ExecutorService createExecutor() {
+        try {
+            MethodHandle virtualThreads = MethodHandles.publicLookup().findStatic(Executors.class,
+                "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) virtualThreads.invokeExact();
+        } catch (Throwable e) {
+            // no virtual threads or they are a preview feature not enabled
+        }
+
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "lox-task");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static void defineNatives(Map<String, LoxCallable> natives) {
+        natives.put("spawn", new Native(1, (interpreter, arguments) ->
+            new HostObject(LoxTask.spawn(interpreter, arguments.get(0)))));
+        natives.put("Channel", new Native(1, (interpreter, arguments) ->
+            new HostObject(new LoxChannel(arguments.get(0)))));
+        natives.put("fork", new Native(1, (interpreter, arguments) ->
+            new HostObject(LoxTask.fork(interpreter, arguments.get(0)))));
+        natives.put("join", new Native(1, (interpreter, arguments) -> {
+            if (!(HostObject.toJava(arguments.get(0)) instanceof LoxTask task)) {
+                throw new HostError("Can only join tasks.");
+            }
+            return task.join();
+        }));
+    }
+
+    private static final class Native implements LoxCallable {
+
+        private final int arity;
+        private final BiFunction<Interpreter, List<Object>, Object> body;
+
+        Native(int arity, BiFunction<Interpreter, List<Object>, Object> body) {
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return body.apply(interpreter, arguments);
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Tokens which are scanned when the parser reaches them.
+// Tokens the parser is done with can be dropped, so only a few
+// of them are kept in memory regardless of the source length.
+final class TokenStream extends AbstractList<Token> {
+
+    private final Supplier<Token> source;
+    private final List<Token> window;
+    // index of the first token in the window
+    private int base;
+    private boolean ended;
+
+    TokenStream(Scanner scanner) {
+        this(() -> {
+            Token token = scanner.nextToken();
+            return token != null ? token : new Token(TokenType.EOF, "", null, scanner.line());
+        });
+    }
+
+    // the source returns tokens up to and including EOF
+    TokenStream(Supplier<Token> source) {
+        this.source = source;
+        this.window = new ArrayList<>();
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < base) {
+            throw new IndexOutOfBoundsException("Token " + index + " was dropped");
+        }
+
+        while (index - base >= window.size() && !ended) {
+            Token token = source.get();
+            window.add(token);
+            ended = token.type == TokenType.EOF;
+        }
+
+        return window.get(index - base);
+    }
+
+    // number of the tokens scanned so far
+    @Override
+    public int size() {
+        return base + window.size();
+    }
+
+    // drops the tokens before the given index
+    void dropBefore(int index) {
+        int count = Math.min(index - base, window.size());
+        if (count > 0) {
+            window.subList(0, count).clear();
+            base += count;
+        }
+    }
+}
@@ -17,7 +17,7 @@ enum TokenType {
     IDENTIFIER,
 
     AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
-    PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, BREAK,
+    PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, BREAK, IMPORT,
 
     EOF;
 }
@@ -23,15 +23,16 @@ public class GenerateAst {
             "Binary : Token operator, Expression left, Expression right",
             "Ternary : Expression condition, Expression left, Expression right",
             "Grouping : Expression expression",
-            "Variable : Token name",
-            "Assign : Token name, Expression expression",
+            "Variable : Token name : int depth = -1",
+            "Assign : Token name, Expression expression : int depth = -1",
             "Logical : Token operator, Expression left, Expression right",
             "Call : Expression callee, Token paren, java.util.List<Expression> arguments",
             "Lambda : Token keyword, java.util.List<Token> params, java.util.List<Statement> body",
-            "Get : Expression object, Token name",
-            "Set : Expression object, Token name, Expression value",
-            "This : Token keyword",
-            "Super : Token keyword, Token method"
+            // cache is the host member found by the last access, see HostClass
+            "Get : Expression object, Token name : Object cache",
+            "Set : Expression object, Token name, Expression value : Object cache",
+            "This : Token keyword : int depth = -1",
+            "Super : Token keyword, Token method : int depth = -1"
         ));
         defineAst(outputDir, "Statement", Arrays.asList(
             "Expr : Expression expression",
@@ -39,11 +40,18 @@ public class GenerateAst {
             "Var : Token name, Expression initializer",
             "Block : java.util.List<Statement> statements",
             "If : Expression condition, Statement thenBranch, Statement elseBranch",
-            "While : Expression condition, Statement body",
+            // keyword is 'while' or 'for'
+            "While : Token keyword, Expression condition, Statement body",
             "Break : Token keyword",
             "Function : Token name, java.util.List<Token> params, java.util.List<Statement> body",
             "Return : Token keyword, Expression expression",
-            "Class : Token name, Expression.Variable parent, java.util.List<Function> methods"
+            "Class : Token name, Expression.Variable parent, java.util.List<Function> methods",
+            "Import : Token keyword, Token path",
+            // iterations of the body run in parallel, each reduction variable is private
+            // to a chunk of them, the values of the chunks are combined with its operator
+            "ParallelFor : Token keyword, Token variable, Expression from, Expression to, "
+                + "java.util.List<Token> operators, java.util.List<Expression.Variable> reductions, "
+                + "Statement body"
         ));
     }
 
@@ -73,6 +81,8 @@ public class GenerateAst {
                 String[] parts = type.split(":");
                 String typeClassName = parts[0].trim();
                 String[] fields = parts.length > 1 ? parts[1].split(",") : new String[0];
+                // fields after the second colon are filled after construction
+                String[] mutableFields = parts.length > 2 ? parts[2].split(",") : new String[0];
 
                 writer.println();
                 writer.println("    final static class " + typeClassName + " extends " + baseClassName + " {");
@@ -81,6 +91,9 @@ public class GenerateAst {
                 for (String field : fields) {
                     writer.println("        final " + field.trim() + ";");
                 }
+                for (String field : mutableFields) {
+                    writer.println("        " + field.trim() + ";");
+                }
 
                 writer.println();
                 writer.print("        " + typeClassName + "(");
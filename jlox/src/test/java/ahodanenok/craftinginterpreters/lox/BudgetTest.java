@@ -0,0 +1,197 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BudgetTest {
+
+    private final ScriptOutput output = new ScriptOutput();
+    private final LoxRuntime runtime = output.newRuntime();
+
+    @Test
+    public void testLimitSteps() {
+        runtime.maxSteps(2000);
+        assertEquals("0: 2000\n", run("""
+            var i = 0;
+            while (i < 2000) i = i + 1;
+            print i;
+            """));
+        assertEquals("70: Step limit exceeded.\n[line 2]\n", run("""
+            var i = 0;
+            for (;;) i = i + 1;
+            """));
+        // the budget is renewed with each run
+        assertEquals("0: done\n", run("for (var i = 0; i < 1000; i = i + 1) {} print \"done\";"));
+    }
+
+    @Test
+    public void testLimitCalls() {
+        runtime.maxCalls(100);
+        assertEquals("70: Call limit exceeded.\n[line 1]\n", run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            print fib(20);
+            """));
+        assertEquals("0: 21\n", run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            print fib(8);
+            """));
+    }
+
+    @Test
+    public void testLimitMemory() {
+        runtime.maxMemory(1024 * 1024);
+        assertEquals("0: 100\n", run("""
+            class Point { init(x, y) { this.x = x; this.y = y; } }
+            var points = 0;
+            for (var i = 0; i < 100; i = i + 1) {
+                var p = Point(i, i);
+                points = points + 1;
+            }
+            print points;
+            """));
+        assertEquals("70: Memory limit exceeded.\n[line 4]\n", run("""
+            class Node { init(next) { this.next = next; } }
+            var list = nil;
+            while (true) {
+                list = Node(list);
+            }
+            """));
+        assertEquals("70: Memory limit exceeded.\n[line 3]\n", run("""
+            var s = "abcdefgh";
+            for (var i = 0; i < 20; i = i + 1) {
+                s = s + s;
+            }
+            """));
+    }
+
+    @Test
+    public void testCountSuperMethods() {
+        runtime.maxMemory(1024 * 1024);
+        // binding the method is the only allocation in the loop
+        assertEquals("70: Memory limit exceeded.\n[line 2]\n", run("""
+            class A { f() {} }
+            class B < A { g() { while (true) super.f; } }
+            B().g();
+            """));
+    }
+
+    @Test
+    public void testShareMemoryWithTasks() {
+        runtime.maxMemory(1024 * 1024);
+        assertEquals("0: 40\n", run("""
+            class Box { init(value) { this.value = value; } }
+            fun task() { return Box(1).value; }
+            var sum = 0;
+            for (var i = 0; i < 40; i = i + 1) sum = sum + join(fork(task));
+            print sum;
+            """));
+    }
+
+    @Test
+    public void testLimitTasks() {
+        runtime.maxSteps(5000);
+        assertEquals("70: Step limit exceeded.\n[line 2]\n", run("""
+            var task = spawn(fun() {
+                while (true) {}
+            });
+            task.join();
+            """));
+    }
+
+    @Test
+    public void testShareBudgetWithTasks() {
+        runtime.maxSteps(10000).maxCalls(200);
+        // each task uses a few steps and calls of its batch and gives back the rest
+        assertEquals("0: 40\n", run("""
+            fun one() { return 1; }
+            fun task() { var n = 0; for (var i = 0; i < 3; i = i + 1) n = n + one(); return n / 3; }
+            var sum = 0;
+            for (var i = 0; i < 20; i = i + 1) sum = sum + join(fork(task));
+            for (var i = 0; i < 20; i = i + 1) sum = sum + spawn(task).join();
+            print sum;
+            """));
+    }
+
+    @Test
+    public void testLimitParallelLoops() {
+        runtime.maxSteps(5000);
+        assertEquals("0: 40\n", run("""
+            var n = 0;
+            parallel for (var i : 0, 40) reduce (+ n) n = n + 1;
+            print n;
+            """));
+        assertEquals("70: Step limit exceeded.\n[line 2]\n", run("""
+            var n = 0;
+            parallel for (var i : 0, 1000000) reduce (+ n) n = n + 1;
+            """));
+
+        runtime.maxSteps(-1).timeout(Duration.ofMillis(50));
+        assertEquals("70: Execution timed out.\n[line 2]\n", run("""
+            var n = 0;
+            parallel for (var i : 0, 100000000) reduce (+ n) n = n + 1;
+            """));
+    }
+
+    @Test
+    public void testTimeOut() {
+        runtime.timeout(Duration.ofMillis(50));
+        assertEquals("70: Execution timed out.\n[line 1]\n", run("while (true) {}"));
+    }
+
+    @Test
+    public void testTimeOutWhileWaiting() {
+        runtime.timeout(Duration.ofMillis(50));
+        assertEquals("70: Execution timed out.\n[line 2]\n", run("""
+            var c = Channel(1);
+            print c.receive();
+            """));
+        // either the join or the task waiting on the channel is woken up first,
+        // the error of the task is rethrown by the join
+        assertTrue(run("""
+            var c = Channel(1);
+            var t = spawn(fun() { return c.receive(); });
+            print join(t);
+            """).matches("70: Execution timed out.\n\\[line [23]]\n"));
+        runtime.timeout(null);
+        assertEquals("0: done\n", run("var c = Channel(1); c.send(1); c.receive(); print \"done\";"));
+    }
+
+    @Test
+    public void testCancelWhileWaiting() throws Exception {
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> run("""
+            var c = Channel(1);
+            spawn(fun() { c.receive(); }).join();
+            """));
+        while (!result.isDone()) {
+            runtime.cancel();
+            Thread.sleep(10);
+        }
+        assertEquals("70: Execution cancelled.\n[line 2]\n", result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> run("""
+            fun spin() { while (true) {} }
+            spin();
+            """));
+        // cancelling before the program starts doesn't affect it
+        while (!result.isDone()) {
+            runtime.cancel();
+            Thread.sleep(10);
+        }
+        assertEquals("70: Execution cancelled.\n[line 1]\n", result.get(10, TimeUnit.SECONDS));
+    }
+
+    // runs on the configured runtime, see ScriptOutput
+    private String run(String source) {
+        return output.run(runtime, source, Path.of(""));
+    }
+}
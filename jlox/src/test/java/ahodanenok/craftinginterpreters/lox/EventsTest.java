@@ -0,0 +1,80 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventsTest {
+
+    @Test
+    public void testRecordEvents() throws Exception {
+        Path file = Files.createTempFile("lox", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lox.Call").withThreshold(Duration.ZERO);
+            recording.enable("lox.Instantiation");
+            recording.enable("lox.RuntimeError");
+            recording.start();
+            assertEquals(70, run("""
+                class Point { init(x, y) { this.x = x; this.y = y; } }
+                fun twice(f) { f(); f(); }
+                twice(fun() { Point(1, 2); });
+                print -nil;
+                """));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            // committed when the calls end, in any order
+            assertEquals(List.of("<lambda>:3", "<lambda>:3", "Point", "Point", "twice:2"),
+                strings(events, "lox.Call", "function").stream().sorted().toList());
+            assertEquals(List.of("Point", "Point"), strings(events, "lox.Instantiation", "className"));
+            assertEquals(List.of("Operand must be a number."), strings(events, "lox.RuntimeError", "message"));
+            assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals("lox.RuntimeError"))
+                .allMatch(event -> event.getInt("line") == 4));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRecordNothingWhenDisabled() throws Exception {
+        Path file = Files.createTempFile("lox", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            assertEquals(0, run("fun f() {} f();"));
+            recording.stop();
+            recording.dump(file);
+
+            assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(event -> event.getEventType().getName().startsWith("lox.")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<String> strings(List<RecordedEvent> events, String type, String field) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().equals(type))
+            .map(event -> event.getString(field))
+            .toList();
+    }
+
+    private int run(String source) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        return new LoxRuntime(stream, stream).run(source, Path.of(""));
+    }
+}
@@ -0,0 +1,99 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HeapSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRestoreGlobals() throws IOException {
+        Interpreter prelude = new Interpreter();
+        run(prelude, """
+            class Node {
+                init(value, next) { this.value = value; this.next = next; }
+                sum() { return this.value + (this.next != nil ? this.next.sum() : 0); }
+            }
+            class Loop < Node {
+                init() { super.init(1, nil); this.next = this; }
+            }
+            fun adder(n) { return fun (x) { return x + n; }; }
+            var list = Node(1, Node(2, Node(3, nil)));
+            var add = adder(10);
+            var loop = Loop();
+            var time = clock;
+            var name = "prelude";
+            var flag = false;
+            var empty;
+            """);
+
+        Path snapshot = directory.resolve("prelude.snapshot");
+        HeapSnapshot.write(prelude.globals, snapshot);
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.useGlobals(HeapSnapshot.read(snapshot));
+        run(interpreter, """
+            var sum = list.sum();
+            var added = add(5);
+            var same = loop.next == loop;
+            list.value = 100;
+            """);
+
+        assertEquals(6.0, global(interpreter, "sum"));
+        assertEquals(15.0, global(interpreter, "added"));
+        assertEquals(true, global(interpreter, "same"));
+        assertSame(Interpreter.NATIVES.get("clock"), global(interpreter, "time"));
+        assertEquals("prelude", global(interpreter, "name"));
+        assertEquals(false, global(interpreter, "flag"));
+        assertEquals(null, global(interpreter, "empty"));
+        // the restored objects are copies
+        assertEquals(1.0, ((LoxInstance) global(prelude, "list")).fields.get("value"));
+    }
+
+    @Test
+    public void testRejectMalformedSnapshot() throws IOException {
+        Interpreter prelude = new Interpreter();
+        run(prelude, "class A { } var a = A();");
+
+        Path snapshot = directory.resolve("prelude.snapshot");
+        HeapSnapshot.write(prelude.globals, snapshot);
+        byte[] data = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(data, data.length - 3));
+
+        assertThrows(IOException.class, () -> HeapSnapshot.read(snapshot));
+    }
+
+    @Test
+    public void testRejectJavaState() {
+        Interpreter prelude = new Interpreter();
+        run(prelude, "var c = Channel(1);");
+
+        Path snapshot = directory.resolve("prelude.snapshot");
+        IOException e = assertThrows(IOException.class, () -> HeapSnapshot.write(prelude.globals, snapshot));
+        assertEquals("Can't write <channel> to a snapshot.", e.getMessage());
+        assertFalse(Files.exists(snapshot));
+    }
+
+    private void run(Interpreter interpreter, String source) {
+        List<Statement> program = new Parser(new Scanner(source).scan()).parse();
+        new Resolver().resolve(program);
+        interpreter.interpret(program);
+    }
+
+    private Object global(Interpreter interpreter, String name) {
+        return interpreter.globals.get(new Token(TokenType.IDENTIFIER, name, null, 1));
+    }
+}
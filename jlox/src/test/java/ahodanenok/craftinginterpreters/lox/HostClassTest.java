@@ -0,0 +1,100 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HostClassTest {
+
+    @Test
+    public void testCallStaticMethods() {
+        assertEquals("0: 2.5\n3\n1024\n", run("""
+            print Math.max(1, 2.5);
+            print Math.abs(-3);
+            print Math.pow(2, 10);
+            """, "Math", Math.class));
+    }
+
+    @Test
+    public void testCreateInstancesAndCallMethods() {
+        assertEquals("0: ab3\n3\n1\n", run("""
+            var builder = StringBuilder("a");
+            builder.append("b").append(3);
+            print builder.toString();
+            print builder.length();
+            print builder.indexOf("b");
+            """, "StringBuilder", StringBuilder.class));
+    }
+
+    @Test
+    public void testCallMethodsThroughPublicTypes() {
+        List<String> list = new ArrayList<>();
+        assertEquals("0: 2\nx\ny\n", run("""
+            list.add("x");
+            list.add("y");
+            print list.size();
+            var it = list.iterator();
+            while (it.hasNext()) print it.next();
+            """, "list", list));
+        assertEquals(List.of("x", "y"), list);
+    }
+
+    @Test
+    public void testAccessFields() {
+        Counter counter = new Counter();
+        assertEquals("0: 5\n7\n10\n", run("""
+            counter.count = 5;
+            print counter.count;
+            counter.add(2);
+            print counter.count;
+            print counter.LIMIT;
+            """, "counter", counter));
+        assertEquals(7, counter.count);
+    }
+
+    @Test
+    public void testCallInLoop() {
+        Counter counter = new Counter();
+        assertEquals("0: 100000\n", run("""
+            for (var i = 0; i < 100000; i = i + 1) counter.add(1);
+            print counter.count;
+            """, "counter", counter));
+    }
+
+    @Test
+    public void testReportErrors() {
+        assertEquals("70: No overload of 'max' accepts the arguments.\n[line 1]\n",
+            run("print Math.max(\"a\", 1);", "Math", Math.class));
+        assertEquals("70: 'abs' doesn't take 2 arguments.\n[line 1]\n",
+            run("print Math.abs(1, 2);", "Math", Math.class));
+        assertEquals("70: Undefined property 'nothing'.\n[line 1]\n",
+            run("print Math.nothing;", "Math", Math.class));
+        assertEquals("70: Can't assign to 'PI'.\n[line 1]\n",
+            run("Math.PI = 3;", "Math", Math.class));
+        assertEquals("70: IndexOutOfBoundsException: Index 5 out of bounds for length 0\n[line 1]\n",
+            run("list.get(5);", "list", new ArrayList<>()));
+    }
+
+    // runs with the value defined as a global, see ScriptOutput
+    private String run(String source, String name, Object value) {
+        ScriptOutput output = new ScriptOutput();
+        LoxRuntime runtime = output.newRuntime();
+        runtime.define(name, value);
+        return output.run(runtime, source, Path.of(""));
+    }
+
+    public static class Counter {
+
+        public static final int LIMIT = 10;
+
+        public int count;
+
+        public void add(int n) {
+            count += n;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IncrementalFrontEndTest {
+
+    private static final String SOURCE = """
+        var a = 1;
+        fun add(x, y) {
+          return x + y; // sum
+        }
+        /* comment */ print add(a, 2);
+        class A < B {
+          init(v) { this.v = v; }
+          get() { return super.get() + this.v; }
+        }
+        var s = "multi
+        line";
+        { var b = a; print b; }
+        """;
+
+    private static final String[] SNIPPETS = {
+        "\n", " ", ";", "}", "{", "\"", "/*", "*/", "//", "x", "1.", "5",
+        "var c = 3;", "fun f() { return 1; }", "print a;", "(", ")", "@"
+    };
+
+    @Test
+    public void testMatchesFullAnalysisAfterEdits() {
+        Random random = new Random(42);
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd();
+        String source = SOURCE;
+        frontEnd.update(source);
+        assertSameAsFullAnalysis(source, frontEnd);
+
+        for (int i = 0; i < 2000; i++) {
+            int position = random.nextInt(source.length() + 1);
+            if (random.nextBoolean() && position < source.length()) {
+                int end = Math.min(source.length(), position + 1 + random.nextInt(12));
+                source = source.substring(0, position) + source.substring(end);
+            } else {
+                String snippet = SNIPPETS[random.nextInt(SNIPPETS.length)];
+                source = source.substring(0, position) + snippet + source.substring(position);
+            }
+
+            // keep the source from degrading into noise
+            if (i % 100 == 99) {
+                source = SOURCE;
+            }
+
+            frontEnd.update(source);
+            assertSameAsFullAnalysis(source, frontEnd);
+        }
+    }
+
+    @Test
+    public void testKeepsUnchangedDeclarations() {
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd();
+        frontEnd.update("var a = 1;\nvar b = 2;\nvar c = 3;\n");
+        List<Statement> before = frontEnd.program();
+
+        frontEnd.update("var a = 1;\nvar b = 20;\nvar c = 3;\n");
+        List<Statement> after = frontEnd.program();
+
+        assertEquals(3, after.size());
+        assertEquals(true, before.get(0) == after.get(0));
+        assertEquals(false, before.get(1) == after.get(1));
+        assertEquals(true, before.get(2) == after.get(2));
+    }
+
+    private void assertSameAsFullAnalysis(String source, IncrementalFrontEnd frontEnd) {
+        List<String> expectedErrors = new ArrayList<>();
+        ErrorReporter reporter = new RecordingReporter(expectedErrors);
+        List<Token> tokens = new Scanner(source, reporter).scan();
+        List<Statement> expected = new Parser(tokens, reporter).parse();
+        if (expectedErrors.isEmpty()) {
+            new Resolver(reporter).resolve(expected);
+        }
+
+        List<String> actualErrors = new ArrayList<>();
+        frontEnd.reportErrors(new RecordingReporter(actualErrors));
+
+        AstPrinter printer = new AstPrinter();
+        assertEquals(printer.print(expected), printer.print(frontEnd.program()), source);
+        assertEquals(expectedErrors, actualErrors, source);
+        assertEquals(!expectedErrors.isEmpty(), frontEnd.hadError(), source);
+    }
+}
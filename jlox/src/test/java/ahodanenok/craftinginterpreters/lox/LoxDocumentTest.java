@@ -0,0 +1,38 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LoxDocumentTest {
+
+    @Test
+    public void testReportErrorsAfterEdits() {
+        LoxDocument document = new LoxDocument("var a = 1;\nprint a;\n");
+        assertEquals(List.of(), document.diagnostics());
+
+        assertEquals("[[line 2] Error at ';': Expect expression.]",
+            document.edit(17, 1, "").toString());
+        assertEquals("var a = 1;\nprint ;\n", document.text());
+
+        document.edit(17, 0, "a + ");
+        assertEquals("var a = 1;\nprint a + ;\n", document.text());
+        assertEquals(List.of(new LoxDocument.Diagnostic(2, " at ';'", "Expect expression.")),
+            document.diagnostics());
+
+        assertEquals(List.of(), document.edit(17, 4, "a"));
+        assertEquals(List.of(new LoxDocument.Diagnostic(1, " at 'a'", "Can't read local variable in its own initializer.")),
+            document.edit(0, 0, "{ var a = a; }\n"));
+    }
+
+    @Test
+    public void testRejectEditsOutsideText() {
+        LoxDocument document = new LoxDocument("print 1;");
+        assertThrows(IndexOutOfBoundsException.class, () -> document.edit(5, 4, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> document.edit(-1, 0, ""));
+        assertEquals("print 1;", document.text());
+    }
+}
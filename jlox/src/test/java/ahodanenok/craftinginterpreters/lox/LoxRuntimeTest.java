@@ -0,0 +1,123 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static ahodanenok.craftinginterpreters.lox.ScriptOutput.run;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LoxRuntimeTest {
+
+    @Test
+    public void testRunPrograms() {
+        assertEquals("0: 3\n", run("print 1 + 2;"));
+        assertEquals("65: [line 1] Error at ';': Expect expression.\n", run("print 1 +;"));
+        assertEquals("65: [line 1] Error at 'return': Can't return from top-level code.\n", run("return 1;"));
+        assertEquals("70: 1\nOperand must be a number.\n[line 2]\n", run("print 1;\nprint -nil;"));
+    }
+
+    @Test
+    public void testRejectStreamingWithPipeliningOrCaching(@TempDir Path directory) {
+        LoxRuntime pipelined = new LoxRuntime().streaming(true).pipelined(true);
+        assertThrows(IllegalStateException.class, () -> pipelined.run("print 1;", Path.of("")));
+        LoxRuntime cached = new LoxRuntime().streaming(true).cache(new ProgramCache(directory));
+        assertThrows(IllegalStateException.class, () -> cached.run("print 1;", Path.of("")));
+    }
+
+    @Test
+    public void testRunInParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String source = """
+                    var n = %d;
+                    fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                    class A { init(n) { this.n = n; } }
+                    print A(fib(15)).n + n;
+                    %s
+                    """.formatted(i, i % 2 == 0 ? "" : "print n + nil;");
+                results.add(executor.submit(() -> run(source)));
+            }
+
+            // each runtime has its own globals, output and errors
+            for (int i = 0; i < results.size(); i++) {
+                String expected = i % 2 == 0
+                    ? "0: " + (610 + i) + "\n"
+                    : "70: " + (610 + i) + "\nOperands must be two numbers or two strings.\n[line 5]\n";
+                assertEquals(expected, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteProgramConcurrently() throws Exception {
+        Program program = new LoxRuntime().compile("""
+            var calls = 0;
+            fun fib(n) { calls = calls + 1; if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            class Counter { init() { this.n = 0; } add(x) { this.n = this.n + x; return this; } }
+            var c = Counter();
+            for (var i = 0; i < 10; i = i + 1) c.add(fib(i));
+            print c.n;
+            print calls;
+            """, Path.of(""));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+                    int status = new LoxRuntime(stream, stream).execute(program);
+                    return status + ": " + output.toString(StandardCharsets.UTF_8);
+                }));
+            }
+
+            // each execution starts with its own globals
+            for (Future<String> result : results) {
+                assertEquals("0: 88\n276\n", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReportCompileErrors() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        LoxRuntime runtime = new LoxRuntime(System.out, new PrintStream(err));
+
+        assertNull(runtime.compile("fun f() { return this; }", Path.of("")));
+        assertEquals("[line 1] Error at 'this': Can't use 'this' outside of a class.\n",
+            err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRunLines() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        LoxRuntime runtime = new LoxRuntime(new PrintStream(out), new PrintStream(err));
+        runtime.runLine("var a = 2;");
+        runtime.runLine("a * 3");
+        runtime.runLine("var = 1;");
+        runtime.runLine("a");
+
+        assertEquals("6\n2\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals("[line 1] Error at '=': Expect variable name.\n", err.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,165 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LoxScriptEngineTest {
+
+    @Test
+    public void testFindEngine() {
+        ScriptEngineManager manager = new ScriptEngineManager();
+        assertInstanceOf(LoxScriptEngine.class, manager.getEngineByName("lox"));
+        assertInstanceOf(LoxScriptEngine.class, manager.getEngineByExtension("lox"));
+    }
+
+    @Test
+    public void testEvalWithBindings() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+
+        engine.put("n", 20);
+        engine.eval("var greeting = \"hi\"; print n + 1;");
+        engine.eval("print greeting + \"!\"; n = n * 2;");
+
+        assertEquals("21\nhi!\n", out.toString());
+        assertEquals(40.0, engine.get("n"));
+        assertEquals("hi", engine.get("greeting"));
+    }
+
+    @Test
+    public void testEvalWithForeignBindings() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        Bindings bindings = new SimpleBindings();
+        bindings.put("x", 3L);
+        engine.eval("var y = x * x;", bindings);
+
+        assertEquals(9.0, bindings.get("y"));
+    }
+
+    @Test
+    public void testBindNull() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        engine.put("x", null);
+        engine.eval("print x;");
+        assertNull(engine.get("x"));
+        assertNull(engine.getBindings(ScriptContext.ENGINE_SCOPE).put("x", 2L));
+        assertEquals(2.0, engine.getBindings(ScriptContext.ENGINE_SCOPE).put("x", 3L));
+
+        Bindings bindings = new SimpleBindings();
+        bindings.put("y", null);
+        engine.eval("print y == nil;", bindings);
+        assertEquals("nil\ntrue\n", out.toString());
+    }
+
+    @Test
+    public void testCompileOnceEvalMany() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        CompiledScript script = ((Compilable) engine).compile("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            var result = fib(n);
+            """);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                int n = i;
+                results.add(executor.submit(() -> {
+                    Bindings bindings = engine.createBindings();
+                    bindings.put("n", n);
+                    script.eval(bindings);
+                    return bindings.get("result");
+                }));
+            }
+
+            int[] fib = { 0, 1, 1, 2, 3, 5, 8, 13, 21, 34, 55, 89, 144, 233, 377, 610 };
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals((double) fib[i], results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvokeFunctionsAndMethods() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        engine.eval("""
+            var total = 0;
+            fun add(x) { total = total + x; return total; }
+            class Greeter { init(name) { this.name = name; } greet(who) { return this.name + " greets " + who; } }
+            var greeter = Greeter("lox");
+            """);
+
+        Invocable invocable = (Invocable) engine;
+        for (int i = 1; i <= 100; i++) {
+            invocable.invokeFunction("add", i);
+        }
+        assertEquals(5050.0, engine.get("total"));
+        assertEquals("lox greets java", invocable.invokeMethod(engine.get("greeter"), "greet", "java"));
+
+        Adder adder = invocable.getInterface(Adder.class);
+        assertEquals(5051.0, adder.add(1));
+
+        assertThrows(NoSuchMethodException.class, () -> invocable.invokeFunction("missing"));
+        assertThrows(NoSuchMethodException.class, () -> invocable.invokeMethod(engine.get("greeter"), "missing"));
+    }
+
+    @Test
+    public void testErrors() {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+
+        ScriptException compileError = assertThrows(ScriptException.class, () -> engine.eval("print 1 +;"));
+        assertEquals("[line 1] Error at ';': Expect expression.", compileError.getMessage());
+
+        ScriptException runtimeError = assertThrows(ScriptException.class, () -> engine.eval("print -nil;"));
+        assertEquals("Operand must be a number.\n[line 1]", runtimeError.getMessage());
+
+        assertThrows(ScriptException.class, () -> ((Invocable) engine).invokeFunction("clock", 1));
+    }
+
+    @Test
+    public void testEvalInContext() throws Exception {
+        ScriptEngine engine = new LoxScriptEngineFactory().getScriptEngine();
+        SimpleScriptContext context = new SimpleScriptContext();
+        StringWriter out = new StringWriter();
+        context.setWriter(out);
+        context.setBindings(engine.createBindings(), SimpleScriptContext.ENGINE_SCOPE);
+        Bindings global = new SimpleBindings();
+        global.put("shared", "global");
+        context.setBindings(global, SimpleScriptContext.GLOBAL_SCOPE);
+
+        engine.eval("print shared;", context);
+        assertEquals("global\n", out.toString());
+    }
+
+    public interface Adder {
+
+        Object add(int x);
+    }
+}
@@ -0,0 +1,202 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoxServerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRunScripts() throws Exception {
+        Path socket = directory.resolve("lox.sock");
+        ServerSocketChannel channel = LoxServer.bind(socket);
+        Thread server = new Thread(() -> {
+            try {
+                LoxServer.serve(channel, (source, dir, out, err) -> {
+                    out.print("out " + source + " in " + dir.getFileName());
+                    err.print(" err");
+                    out.print(" out");
+                    return source.length();
+                });
+            } catch (IOException e) {
+                // closed when the test ends
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        // the source is run in the working directory of the server
+        assertEquals("out: out abc in " + Path.of("").toAbsolutePath().getFileName() + " out\nerr:  err\nexit: 3",
+            connect(socket, LoxServer.REQUEST_SOURCE, "abc"));
+
+        Path script = directory.resolve("script.lox");
+        Files.writeString(script, "print 1;");
+        assertEquals("out: out print 1; in " + directory.getFileName() + " out\nerr:  err\nexit: 8",
+            connect(socket, LoxServer.REQUEST_FILE, script.toString()));
+
+        assertEquals("out: \nerr: Can't read " + directory.resolve("missing.lox") + "\n\nexit: 66",
+            connect(socket, LoxServer.REQUEST_FILE, directory.resolve("missing.lox").toString()));
+        channel.close();
+    }
+
+    @Test
+    public void testRunScriptsConcurrently() throws Exception {
+        Path socket = directory.resolve("lox.sock");
+        ServerSocketChannel channel = LoxServer.bind(socket);
+        // every script waits for the others, so they can only finish if run concurrently
+        CyclicBarrier barrier = new CyclicBarrier(4);
+        Thread server = new Thread(() -> {
+            try {
+                LoxServer.serve(channel, (source, dir, out, err) -> {
+                    try {
+                        barrier.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        return 1;
+                    }
+                    out.print(source);
+                    return 0;
+                });
+            } catch (IOException e) {
+                // closed when the test ends
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String source = "script " + i;
+                results.add(clients.submit(() -> connect(socket, LoxServer.REQUEST_SOURCE, source)));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals("out: script " + i + "\nerr: \nexit: 0", results.get(i).get());
+            }
+        } finally {
+            clients.shutdown();
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testWriteFromManyThreads() throws Exception {
+        Path socket = directory.resolve("lox.sock");
+        ServerSocketChannel channel = LoxServer.bind(socket);
+        Thread server = new Thread(() -> {
+            try {
+                LoxServer.serve(channel, (source, dir, out, err) -> {
+                    List<Thread> writers = new ArrayList<>();
+                    for (int i = 0; i < 4; i++) {
+                        PrintStream target = i % 2 == 0 ? out : err;
+                        Thread writer = new Thread(() -> {
+                            for (int n = 0; n < 1000; n++) {
+                                target.println(source);
+                            }
+                        });
+                        writer.start();
+                        writers.add(writer);
+                    }
+                    for (Thread writer : writers) {
+                        try {
+                            writer.join();
+                        } catch (InterruptedException e) {
+                            return 1;
+                        }
+                    }
+                    return 0;
+                });
+            } catch (IOException e) {
+                // closed when the test ends
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(0, LoxServer.connect(socket, LoxServer.REQUEST_SOURCE, "0123456789",
+                new PrintStream(out), new PrintStream(err)));
+            assertEquals("0123456789\n".repeat(2000), out.toString(StandardCharsets.UTF_8));
+            assertEquals("0123456789\n".repeat(2000), err.toString(StandardCharsets.UTF_8));
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testRejectRequestsOfInvalidSize() throws Exception {
+        Path socket = directory.resolve("lox.sock");
+        ServerSocketChannel channel = LoxServer.bind(socket);
+        Thread server = new Thread(() -> {
+            try {
+                LoxServer.serve(channel, (source, dir, out, err) -> 0);
+            } catch (IOException e) {
+                // closed when the test ends
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        try {
+            String error = "err: Request size must be between 0 and " + LoxServer.MAX_REQUEST_SIZE + " bytes.\n";
+            assertEquals(error + "exit: 76", send(socket, -1));
+            assertEquals(error + "exit: 76", send(socket, LoxServer.MAX_REQUEST_SIZE + 1));
+        } finally {
+            channel.close();
+        }
+    }
+
+    // sends a request header with the given length and reads the frames of the response
+    private String send(Path socket, int length) throws IOException {
+        try (SocketChannel server = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(server));
+            out.writeByte(LoxServer.REQUEST_SOURCE);
+            out.writeInt(length);
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(server));
+            StringBuilder response = new StringBuilder();
+            int frame;
+            while ((frame = in.readByte()) != LoxServer.FRAME_EXIT) {
+                response.append(frame == LoxServer.FRAME_ERR ? "err: " : "out: ")
+                    .append(new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+            }
+            return response.append("exit: ").append(in.readInt()).toString();
+        }
+    }
+
+    private String connect(Path socket, int type, String request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = LoxServer.connect(socket, type, request, new PrintStream(out), new PrintStream(err));
+
+        return "out: " + out.toString(StandardCharsets.UTF_8)
+            + "\nerr: " + err.toString(StandardCharsets.UTF_8)
+            + "\nexit: " + status;
+    }
+}
@@ -0,0 +1,198 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModulesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testImportModules() throws IOException {
+        write("lib/state.lox", """
+            var hits = 0;
+            fun hit() { hits = hits + 1; return hits; }
+            """);
+        write("lib/a.lox", """
+            import "state.lox";
+            var fromA = hit();
+            """);
+        write("b.lox", """
+            import "lib/state.lox";
+            var fromB = hit();
+            class Point { init(x) { this.x = x; } }
+            """);
+
+        Interpreter interpreter = run("""
+            import "lib/a.lox";
+            import "b.lox";
+            var third = hit();
+            var x = Point(5).x;
+            """);
+
+        // state.lox is executed once, its functions keep using its own globals
+        assertEquals(1.0, global(interpreter, "fromA"));
+        assertEquals(2.0, global(interpreter, "fromB"));
+        assertEquals(3.0, global(interpreter, "third"));
+        assertEquals(5.0, global(interpreter, "x"));
+    }
+
+    @Test
+    public void testReportModuleErrors() throws IOException {
+        write("bad.lox", "var x = ;");
+        write("uses_bad.lox", "import \"bad.lox\";");
+
+        List<Statement> program = parse("""
+            import "uses_bad.lox";
+            import "missing.lox";
+            """);
+        List<String> errors = new ArrayList<>();
+        Modules.compile(program, directory);
+
+        assertFalse(Modules.check(program, directory, new RecordingReporter(errors)));
+        assertEquals(List.of(
+            "1 at ';': Expect expression.",
+            "1 at '\"bad.lox\"': Module has errors.",
+            "2 at '\"missing.lox\"': Can't read module."), errors);
+    }
+
+    @Test
+    public void testExecuteModulesForEachRuntime() throws IOException {
+        write("counter.lox", """
+            print "loaded";
+            var count = 0;
+            fun next() { count = count + 1; return count; }
+            """);
+        String program = "import \"counter.lox\"; print next(); print next();";
+
+        LoxRuntime a = output.newRuntime();
+        assertEquals("0: loaded\n1\n2\n", run(a, program));
+        assertEquals("0: 3\n4\n", run(a, program));
+        assertEquals("0: loaded\n1\n2\n", run(output.newRuntime(), program));
+    }
+
+    @Test
+    public void testExecuteFailedModuleAgain() throws IOException {
+        write("slow.lox", "var n = 0; while (n < 1000) n = n + 1;");
+        String program = "import \"slow.lox\"; print n;";
+
+        LoxRuntime limited = output.newRuntime().maxSteps(100);
+        assertEquals("70: Step limit exceeded.\n[line 1]\n", run(limited, program));
+        assertEquals("0: 1000\n", run(output.newRuntime(), program));
+        assertEquals("0: 1000\n", run(output.newRuntime(), program));
+        limited.maxSteps(-1);
+        assertEquals("0: 1000\n", run(limited, program));
+    }
+
+    @Test
+    public void testReloadModifiedModule() throws IOException {
+        write("version.lox", "var version = 1;");
+        String program = "import \"version.lox\"; print version;";
+        LoxRuntime runtime = output.newRuntime();
+        assertEquals("0: 1\n", run(runtime, program));
+
+        Path file = write("version.lox", "var version = 2;");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+        assertEquals("0: 2\n", run(runtime, program));
+    }
+
+    @Test
+    public void testImportConcurrently() throws Exception {
+        write("spawner.lox", """
+            fun load() { var n = 0; while (n < 10000) n = n + 1; return n; }
+            var loaded = spawn(load).join();
+            """);
+        String program = "import \"spawner.lox\"; print loaded;";
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<Thread> threads = new ArrayList<>();
+            List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+            for (int i = 0; i < 4; i++) {
+                LoxRuntime runtime = output.newRuntime();
+                Thread thread = new Thread(() -> statuses.add(runtime.run(program, directory)));
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(List.of(0, 0, 0, 0), statuses);
+        });
+    }
+
+    @Test
+    public void testCheckModulesWhenStreaming() throws IOException {
+        write("bad.lox", "var x = ;");
+        write("good.lox", "var y = 2;");
+        LoxRuntime runtime = output.newRuntime().streaming(true);
+
+        // the declarations before the import are executed, nothing after it
+        assertEquals("65: 1\n[line 1] Error at ';': Expect expression.\n"
+                + "[line 2] Error at '\"bad.lox\"': Module has errors.\n",
+            run(runtime, "print 1;\nimport \"bad.lox\";\nprint 2;"));
+        assertEquals("0: 2\n", run(runtime, "import \"good.lox\"; print y;"));
+    }
+
+    @Test
+    public void testImportOnlyInTopLevelCode() {
+        List<String> errors = new ArrayList<>();
+        List<Statement> program = new Parser(new Scanner("""
+            import "a.lox";
+            { import "b.lox"; }
+            fun f() { import "c.lox"; }
+            """).scan()).parse();
+        new Resolver(new RecordingReporter(errors)).resolve(program);
+
+        assertEquals(List.of(
+            "2 at 'import': Can't import a module inside a block or function.",
+            "3 at 'import': Can't import a module inside a block or function."), errors);
+    }
+
+    private Interpreter run(String source) {
+        List<Statement> program = parse(source);
+        Modules.compile(program, directory);
+        assertTrue(Modules.check(program, directory, new RecordingReporter(new ArrayList<>())));
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.directory = directory;
+        interpreter.interpret(program);
+        return interpreter;
+    }
+
+    private List<Statement> parse(String source) {
+        List<Statement> program = new Parser(new Scanner(source).scan()).parse();
+        new Resolver().resolve(program);
+        return program;
+    }
+
+    private Object global(Interpreter interpreter, String name) {
+        return interpreter.globals.get(new Token(TokenType.IDENTIFIER, name, null, 1));
+    }
+
+    private Path write(String path, String source) throws IOException {
+        Path file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        return file;
+    }
+
+    private final ScriptOutput output = new ScriptOutput();
+
+    private String run(LoxRuntime runtime, String source) {
+        return output.run(runtime, source, directory);
+    }
+}
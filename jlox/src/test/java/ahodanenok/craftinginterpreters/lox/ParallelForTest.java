@@ -0,0 +1,91 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static ahodanenok.craftinginterpreters.lox.ScriptOutput.run;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelForTest {
+
+    @Test
+    public void testReduceSum() {
+        assertEquals("0: 500500\n", run("""
+            var sum = 0;
+            parallel for (var i : 1, 1001) reduce (+ sum) {
+                sum = sum + i;
+            }
+            print sum;
+            """));
+    }
+
+    @Test
+    public void testReduceSeveralVariables() {
+        assertEquals("0: 3628800\n55\n", run("""
+            var product = 1;
+            var sum = 0;
+            parallel for (var i : 1, 11) reduce (* product, + sum) {
+                product = product * i;
+                sum = sum + i;
+            }
+            print product;
+            print sum;
+            """));
+    }
+
+    @Test
+    public void testReduceLocals() {
+        assertEquals("0: 328350\n0\n", run("""
+            fun squares(n) {
+                var sum = 0;
+                parallel for (var i : 0, n) reduce (+ sum) {
+                    var square = i * i;
+                    sum = sum + square;
+                }
+                return sum;
+            }
+            print squares(100);
+            print squares(0);
+            """));
+    }
+
+    @Test
+    public void testCallFunctionsInBody() {
+        assertEquals("0: 20\n", run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            var count = 0;
+            parallel for (var i : 0, 20) reduce (+ count) {
+                if (fib(i) >= 0) count = count + 1;
+            }
+            print count;
+            """));
+    }
+
+    @Test
+    public void testParallelAsIdentifier() {
+        assertEquals("0: 3\n", run("""
+            var parallel = 3;
+            print parallel;
+            """));
+    }
+
+    @Test
+    public void testReportErrors() {
+        assertEquals("65: [line 2] Error at 'total': Can't assign to a variable declared outside of a parallel loop, except a reduction variable.\n", run("""
+            var total = 0;
+            parallel for (var i : 0, 10) total = total + i;
+            """));
+        assertEquals("65: [line 1] Error at 'break': Can't break out of a parallel loop.\n", run("""
+            while (true) parallel for (var i : 0, 10) break;
+            """));
+        assertEquals("65: [line 1] Error at 'return': Can't return from a parallel loop.\n", run("""
+            fun f() { parallel for (var i : 0, 10) return i; }
+            """));
+        assertEquals("70: Range of a parallel loop must be numbers.\n[line 1]\n", run("""
+            parallel for (var i : 0, "a") print i;
+            """));
+        assertEquals("70: Operands must be numbers.\n[line 2]\n", run("""
+            var s = "a";
+            parallel for (var i : 0, 1) reduce (+ s) {}
+            """));
+    }
+}
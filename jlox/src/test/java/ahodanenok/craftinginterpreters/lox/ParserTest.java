@@ -1,5 +1,6 @@
 package ahodanenok.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -8,7 +9,10 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ParserTest {
 
@@ -645,4 +649,132 @@ public class ParserTest {
         assertEquals(8.0, assertInstanceOf(Expression.Literal.class, ternary4.left).value);
         assertEquals(9.0, assertInstanceOf(Expression.Literal.class, ternary4.right).value);
     }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "1 + 2 * 3 - 4 / 5;",
+        "-!-a.b(c, d).e;",
+        "a == b != c < d <= e > f >= g;",
+        "a or b and c or !d;",
+        "1, 2, a = b = 3;",
+        "a ? b ? c : d : e ? f : g;",
+        "x = a ? b : c;",
+        "a.b.c = d.e = f;",
+        "(a + b) * (c - d);",
+        "print f(fun (x) { return x * 2; }, 1);",
+        "var f = fun (a, b) { return a, b; };",
+        "class A < B { init(x) { this.x = super.y(x); } }",
+        "for (var i = 0; i < 10; i = i + 1) print i;",
+        "* 1;",
+        "+ 1 + 2;",
+        "a + + b;",
+        "a * + b;",
+        "a == != b;",
+        ", 1;",
+        "(, 1);",
+        "a + b = c;",
+        "a ? b = c : d;",
+        "a ? b;",
+        "- * 3;",
+        "1 + ;",
+        "f(a, ;"
+    })
+    public void testPrecedenceClimbingMatchesRecursiveDescent(String source) {
+        List<Token> tokens = new Scanner(source).scan();
+
+        List<String> expectedErrors = new ArrayList<>();
+        List<Statement> expected = new Parser(tokens, new RecordingReporter(expectedErrors)).parse();
+
+        List<String> actualErrors = new ArrayList<>();
+        List<Statement> actual = new Parser(tokens, new RecordingReporter(actualErrors))
+            .precedenceClimbing(true)
+            .parse();
+
+        AstPrinter printer = new AstPrinter();
+        assertEquals(printer.print(expected), printer.print(actual));
+        assertEquals(expectedErrors, actualErrors);
+    }
+
+    @Test
+    public void testPrecedenceClimbing_DeeplyNested() {
+        StringBuilder source = new StringBuilder();
+        source.append("-".repeat(100_000)).append("1");
+        for (int i = 0; i < 200; i++) {
+            source.append(" + (1");
+        }
+        source.append(")".repeat(200)).append(";");
+
+        List<String> errors = new ArrayList<>();
+        List<Statement> statements = new Parser(
+                new Scanner(source.toString()).scan(), new RecordingReporter(errors))
+            .precedenceClimbing(true)
+            .parse();
+
+        assertEquals(List.of(), errors);
+        assertEquals(1, statements.size());
+        Expression expression = assertInstanceOf(Statement.Expr.class, statements.get(0)).expression;
+        Expression.Binary binary = assertInstanceOf(Expression.Binary.class, expression);
+        assertInstanceOf(Expression.Unary.class, binary.left);
+        assertInstanceOf(Expression.Grouping.class, binary.right);
+    }
+
+    @Test
+    public void testLazyFunctions_BodyParsedOnFirstUse() {
+        String source = """
+            fun f(a) { if (a) { return a; } return fun (x) { return x; }; }
+            class A < B { init() { this.x = 1; } get() { return super.get(); } }
+            f(1);
+            """;
+        List<Token> tokens = new Scanner(source).scan();
+
+        List<Statement> expected = new Parser(tokens).precedenceClimbing(true).parse();
+        List<Statement> actual = new Parser(tokens).precedenceClimbing(true).lazyFunctions(true).parse();
+
+        Statement.Function function = assertInstanceOf(Statement.Function.class, actual.get(0));
+        LazyFunctionBody body = assertInstanceOf(LazyFunctionBody.class, function.body);
+        assertFalse(body.isParsed());
+
+        AstPrinter printer = new AstPrinter();
+        assertEquals(printer.print(expected), printer.print(actual));
+        assertTrue(body.isParsed());
+    }
+
+    @Test
+    public void testLazyFunctions_ErrorsReportedOnFirstUse() {
+        List<String> errors = new ArrayList<>();
+        List<Statement> statements = new Parser(
+                new Scanner("fun f() {\n var = 1; }\nf();").scan(), new RecordingReporter(errors))
+            .lazyFunctions(true)
+            .parse();
+
+        assertEquals(List.of(), errors);
+        Statement.Function function = assertInstanceOf(Statement.Function.class, statements.get(0));
+        RuntimeError e = assertThrows(RuntimeError.class, () -> function.body.size());
+        assertEquals("f", e.token.lexeme);
+        assertEquals(List.of("2 at '=': Expect variable name."), errors);
+
+        // errors are reported only once
+        assertThrows(RuntimeError.class, () -> function.body.size());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void testLazyFunctions_ResolvedInEnclosingScopes() {
+        List<Statement> statements = new Parser(new Scanner("""
+            {
+                var a = 1;
+                fun f() { return a; }
+                var b = 2;
+            }
+            """).scan()).lazyFunctions(true).parse();
+
+        List<String> errors = new ArrayList<>();
+        new Resolver(new RecordingReporter(errors)).resolve(statements);
+
+        Statement.Block block = assertInstanceOf(Statement.Block.class, statements.get(0));
+        Statement.Function function = assertInstanceOf(Statement.Function.class, block.statements.get(1));
+        Statement.Return ret = assertInstanceOf(Statement.Return.class, function.body.get(0));
+        assertEquals(1, assertInstanceOf(Expression.Variable.class, ret.expression).depth);
+        assertEquals(List.of(), errors);
+    }
 }
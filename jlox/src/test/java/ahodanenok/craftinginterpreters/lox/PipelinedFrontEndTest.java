@@ -0,0 +1,86 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class PipelinedFrontEndTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "var a = 1; print a;",
+        "fun f(x) { return x + 1; } print f(2);",
+        "class A < B { init() { this.x = 1; } get() { return super.get(); } }",
+        "var a = 1;\n@ print a;\nvar s = \"unterminated",
+        "var = 1;\nprint ;\nfun f( { }",
+        "{ var a = 1; var a = 2; }\nreturn 1;\nprint this;",
+        "fun f() { var x = 1; print ; }\nclass A { init() { return 1; } }"
+    })
+    public void testMatchesSequentialAnalysis(String source) {
+        assertSameAsSequentialAnalysis(source);
+    }
+
+    @Test
+    public void testMatchesSequentialAnalysis_ManyBatches() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            source.append("var v").append(i).append(" = ").append(i).append(" * 2;\n");
+            if (i % 300 == 0) {
+                source.append("fun f").append(i).append("(a) { { var b = a; return b + v0; } }\n");
+            }
+        }
+        assertSameAsSequentialAnalysis(source.toString());
+
+        source.append("print v1 +;\n");
+        assertSameAsSequentialAnalysis(source.toString());
+    }
+
+    @Test
+    public void testStopPhasesWhenAnalysisFails() {
+        // more batches than the queues hold, the phases would wait for the resolver forever
+        String source = "var v = 1;\n".repeat(50_000);
+        PipelinedFrontEnd frontEnd = new PipelinedFrontEnd(source);
+        Thread.currentThread().interrupt();
+        assertThrows(IllegalStateException.class, frontEnd::analyze);
+        Thread.interrupted();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> thread.getName().equals("lox-scanner")
+                        || thread.getName().equals("lox-parser"))) {
+                Thread.sleep(10);
+            }
+        });
+    }
+
+    private void assertSameAsSequentialAnalysis(String source) {
+        List<String> expectedErrors = new ArrayList<>();
+        ErrorReporter reporter = new RecordingReporter(expectedErrors);
+        List<Token> tokens = new Scanner(source, reporter).scan();
+        List<Statement> expected = new Parser(tokens, reporter).parse();
+        if (expectedErrors.isEmpty()) {
+            new Resolver(reporter).resolve(expected);
+        }
+
+        PipelinedFrontEnd frontEnd = new PipelinedFrontEnd(source);
+        List<Statement> actual = frontEnd.analyze();
+        List<String> actualErrors = new ArrayList<>();
+        frontEnd.reportErrors(new RecordingReporter(actualErrors));
+
+        assertEquals(expectedErrors, actualErrors);
+        assertEquals(!expectedErrors.isEmpty(), frontEnd.hadError());
+        if (expectedErrors.isEmpty()) {
+            AstPrinter printer = new AstPrinter();
+            assertEquals(printer.print(expected), printer.print(actual));
+        }
+    }
+}
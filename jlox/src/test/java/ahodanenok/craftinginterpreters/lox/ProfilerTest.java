@@ -0,0 +1,60 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProfilerTest {
+
+    @Test
+    public void testSampleCallStacks() throws Exception {
+        List<String> stacks = profile("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            fun main() {
+                var f = fun() { return fib(22); };
+                return f();
+            }
+            print main();
+            """);
+        assertTrue(stacks.stream().anyMatch(line -> line.startsWith("<script>;main:2;<lambda>:3;fib:1;fib:1")),
+            stacks.toString());
+        for (String line : stacks) {
+            assertTrue(line.matches("<script>(;[^; ]+)* [0-9]+"), line);
+        }
+    }
+
+    @Test
+    public void testSampleTasks() throws Exception {
+        List<String> stacks = profile("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            fun work() { return fib(22); }
+            print spawn(work).join();
+            """);
+        // the task is sampled as called from where it was spawned
+        assertTrue(stacks.stream().anyMatch(line -> line.startsWith("<script>;<native fn>;work:2;fib:1")),
+            stacks.toString());
+    }
+
+    private List<String> profile(String source) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        Profiler profiler = new Profiler(1, TimeUnit.MILLISECONDS);
+        LoxRuntime runtime = new LoxRuntime(stream, stream).profile(profiler);
+        profiler.start();
+        int status = runtime.run(source, Path.of(""));
+        profiler.stop();
+        assertEquals(0, status, output.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream samples = new ByteArrayOutputStream();
+        profiler.write(new PrintStream(samples, true, StandardCharsets.UTF_8));
+        return samples.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
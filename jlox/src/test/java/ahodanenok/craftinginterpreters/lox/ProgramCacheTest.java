@@ -0,0 +1,122 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProgramCacheTest {
+
+    private static final String SOURCE = """
+        var a = 1.5;
+        var s = "multi
+        line ☃";
+        fun add(x, y) { return x + y; }
+        class A < B {
+            init(v) { this.v = v; }
+            get() { return super.get() + this.v; }
+        }
+        for (var i = 0; i < 3; i = i + 1) {
+            if (i == 1) break; else print -i;
+        }
+        var f = fun (x) { return x ? nil : !true or false and 2 / 3 * 4 - 5 >= 6; };
+        { var b = a; b = a = 2; A(b).x = f(b, 1), 2; }
+        """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testWriteAndReadProgram() {
+        List<Statement> expected = resolve(SOURCE);
+
+        byte[] data = new AstWriter().write(expected);
+        List<Statement> actual = new AstReader(ByteBuffer.wrap(data)).read();
+
+        assertSameProgram(expected, actual);
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        ProgramCache cache = new ProgramCache(directory);
+        assertNull(cache.load(SOURCE));
+
+        List<Statement> expected = resolve(SOURCE);
+        cache.store(SOURCE, expected);
+
+        assertSameProgram(expected, cache.load(SOURCE));
+        assertNull(cache.load(SOURCE + " "));
+    }
+
+    @Test
+    public void testIgnoreDamagedFile() throws IOException {
+        ProgramCache cache = new ProgramCache(directory);
+        cache.store(SOURCE, resolve(SOURCE));
+
+        try (var files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            byte[] data = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(data, data.length / 2));
+        }
+
+        assertNull(cache.load(SOURCE));
+    }
+
+    private List<Statement> resolve(String source) {
+        List<Statement> program = new Parser(new Scanner(source).scan()).parse();
+        new Resolver().resolve(program);
+        return program;
+    }
+
+    private void assertSameProgram(List<Statement> expected, List<Statement> actual) {
+        assertEquals(new AstPrinter().print(expected), new AstPrinter().print(actual));
+        assertEquals(details(expected), details(actual));
+    }
+
+    // what AstPrinter doesn't print: resolved depths and token lines
+    private List<String> details(List<Statement> program) {
+        List<String> details = new ArrayList<>();
+        new AstPrinter() {
+            @Override
+            public String visitVariableExpression(Expression.Variable expression) {
+                details.add(expression.name.lexeme + ":" + expression.name.line + ":" + expression.depth);
+                return super.visitVariableExpression(expression);
+            }
+
+            @Override
+            public String visitAssignExpression(Expression.Assign expression) {
+                details.add(expression.name.lexeme + ":" + expression.name.line + ":" + expression.depth);
+                return super.visitAssignExpression(expression);
+            }
+
+            @Override
+            public String visitThisExpression(Expression.This expression) {
+                details.add("this:" + expression.keyword.line + ":" + expression.depth);
+                return super.visitThisExpression(expression);
+            }
+
+            @Override
+            public String visitSuperExpression(Expression.Super expression) {
+                details.add("super:" + expression.keyword.line + ":" + expression.depth);
+                return super.visitSuperExpression(expression);
+            }
+
+            @Override
+            public String visitBinaryExpression(Expression.Binary expression) {
+                details.add(expression.operator.type + ":" + expression.operator.line);
+                return super.visitBinaryExpression(expression);
+            }
+        }.print(program);
+
+        return details;
+    }
+}
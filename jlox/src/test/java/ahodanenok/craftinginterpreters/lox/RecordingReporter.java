@@ -0,0 +1,23 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.List;
+
+// collects the errors as "<line>: <message>" or "<line> at '<lexeme>': <message>"
+final class RecordingReporter implements ErrorReporter {
+
+    private final List<String> errors;
+
+    RecordingReporter(List<String> errors) {
+        this.errors = errors;
+    }
+
+    @Override
+    public void error(int line, String msg) {
+        errors.add(line + ": " + msg);
+    }
+
+    @Override
+    public void error(Token token, String msg) {
+        errors.add(token.line + " at '" + token.lexeme + "': " + msg);
+    }
+}
@@ -0,0 +1,157 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResolverTest {
+
+    private enum Mode {
+
+        RESOLVER,
+        PARALLEL,
+        PARSER;
+    }
+
+    @Test
+    public void testResolveShadowedVariables() {
+        List<Integer> depths = resolveDepths("""
+            var a = 0;
+            {
+                var a = 1;
+                {
+                    var b = a;
+                    var a = 2;
+                    print a + b;
+                }
+                print a;
+                fun f(b) { return a + b; }
+            }
+            print a;
+            """, new ArrayList<>());
+
+        // b's initializer, a + b, a after the inner block, a + b in f, global a
+        assertEquals(List.of(1, 0, 0, 0, 1, 0, -1), depths);
+    }
+
+    @Test
+    public void testResolveThisAndSuper() {
+        List<Integer> depths = resolveDepths("""
+            class A < B {
+                get() { return fun () { return this.x + super.get(); }; }
+            }
+            """, new ArrayList<>());
+
+        assertEquals(List.of(2, 3), depths);
+    }
+
+    @Test
+    public void testResolveErrors() {
+        List<String> errors = new ArrayList<>();
+        resolveDepths("""
+            {
+                var a = 1;
+                var a = 2;
+                { var b = b; }
+            }
+            { var a = 3; }
+            """, errors);
+
+        assertEquals(List.of(
+            "3 at 'a': Already a variable with this name in this scope.",
+            "4 at 'b': Can't read local variable in its own initializer."), errors);
+    }
+
+    @Test
+    public void testParallelResolutionMatchesSequential() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            source.append("var g").append(i).append(" = ").append(i).append(";\n");
+            source.append("fun f").append(i).append("(a) { var b = a; { var b = b; return a + g0; } }\n");
+            source.append("print g").append(i).append(";\n");
+            source.append("class C").append(i).append(" < C { m() { return this.x + super.m(); } }\n");
+            source.append("{ var x = 1; var x = 2; print this; }\n");
+        }
+
+        List<String> expectedErrors = new ArrayList<>();
+        List<Integer> expected = resolveDepths(source.toString(), expectedErrors, Mode.RESOLVER);
+
+        List<String> actualErrors = new ArrayList<>();
+        List<Integer> actual = resolveDepths(source.toString(), actualErrors, Mode.PARALLEL);
+
+        assertEquals(expected, actual);
+        assertEquals(expectedErrors, actualErrors);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "var a = 1; { var b = a; { var a = a; a = b = 2; } }",
+        "fun f(x, x) { var y = x; { var y = y; return y; } } return f;",
+        "for (var i = 0; i < 3; i = i + 1) { var j = i; print this; }",
+        "{ var i; for (i = 0; i < 3; g(fun (k) { return i + k; })) { var i = i; } }",
+        "class A < A { init() { return 1; } get() { return fun () { return this.x + super.y; }; } }",
+        "class B { m() { return super.m(); } } print super.x;",
+        "{ var f = fun (a) { var a; return a; }; var f; }"
+    })
+    public void testResolveWhileParsingMatchesResolver(String source) {
+        List<String> expectedErrors = new ArrayList<>();
+        List<Integer> expected = resolveDepths(source, expectedErrors, Mode.RESOLVER);
+
+        List<String> actualErrors = new ArrayList<>();
+        List<Integer> actual = resolveDepths(source, actualErrors, Mode.PARSER);
+
+        assertEquals(expected, actual);
+        assertEquals(expectedErrors, actualErrors);
+    }
+
+    private List<Integer> resolveDepths(String source, List<String> errors) {
+        return resolveDepths(source, errors, Mode.RESOLVER);
+    }
+
+    private List<Integer> resolveDepths(String source, List<String> errors, Mode mode) {
+        Parser parser = new Parser(new Scanner(source).scan());
+        List<Statement> statements;
+        switch (mode) {
+            case RESOLVER -> {
+                statements = parser.parse();
+                new Resolver(new RecordingReporter(errors)).resolve(statements);
+            }
+            case PARALLEL -> {
+                statements = parser.parse();
+                new ParallelResolver(new RecordingReporter(errors)).resolve(statements);
+            }
+            case PARSER -> {
+                statements = parser.resolving(new Resolver(new RecordingReporter(errors))).parse();
+            }
+            default -> throw new IllegalArgumentException(mode.toString());
+        }
+
+        List<Integer> depths = new ArrayList<>();
+        new AstPrinter() {
+            @Override
+            public String visitVariableExpression(Expression.Variable expression) {
+                depths.add(expression.depth);
+                return super.visitVariableExpression(expression);
+            }
+
+            @Override
+            public String visitThisExpression(Expression.This expression) {
+                depths.add(expression.depth);
+                return super.visitThisExpression(expression);
+            }
+
+            @Override
+            public String visitSuperExpression(Expression.Super expression) {
+                depths.add(expression.depth);
+                return super.visitSuperExpression(expression);
+            }
+        }.print(statements);
+
+        return depths;
+    }
+}
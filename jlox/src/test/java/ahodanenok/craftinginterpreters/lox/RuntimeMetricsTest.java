@@ -0,0 +1,70 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RuntimeMetricsTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final LoxRuntime runtime = new LoxRuntime(
+        new PrintStream(output, true, StandardCharsets.UTF_8),
+        new PrintStream(output, true, StandardCharsets.UTF_8));
+
+    @Test
+    public void testCountExecution() {
+        assertEquals(0, runtime.run("""
+            class Point { init(x) { this.x = x; } }
+            fun make(n) { return Point(n); }
+            for (var i = 0; i < 10; i = i + 1) make(i);
+            """, Path.of("")));
+        LoxRuntimeMXBean metrics = runtime.metrics();
+        assertEquals(20, metrics.getCalls());
+        assertEquals(10, metrics.getInstancesCreated());
+        assertEquals(0, metrics.getRuntimeErrors());
+        assertTrue(metrics.getStatementsExecuted() > 30, "" + metrics.getStatementsExecuted());
+        // blocks of the loop, calls of make and of initializers bound to instances
+        assertTrue(metrics.getEnvironmentsAllocated() >= 40, "" + metrics.getEnvironmentsAllocated());
+
+        assertEquals(70, runtime.run("print -nil;", Path.of("")));
+        assertEquals(1, metrics.getRuntimeErrors());
+    }
+
+    @Test
+    public void testCountTasks() {
+        assertEquals(0, runtime.run("""
+            fun work() { var n = 0; for (var i = 0; i < 100; i = i + 1) n = n + 1; return n; }
+            spawn(work).join();
+            join(fork(work));
+            var sum = 0;
+            parallel for (var i : 0, 100) reduce (+ sum) sum = sum + 1;
+            """, Path.of("")));
+        // work is called twice, the loop bodies are statements of the tasks
+        assertTrue(runtime.metrics().getStatementsExecuted() > 500, "" + runtime.metrics().getStatementsExecuted());
+    }
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = runtime.registerMBean();
+        try {
+            runtime.run("fun f() {} f(); f();", Path.of(""));
+            assertEquals(2L, server.getAttribute(name, "Calls"));
+            assertTrue((long) server.getAttribute(name, "ParseTime") >= 0);
+        } finally {
+            runtime.unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
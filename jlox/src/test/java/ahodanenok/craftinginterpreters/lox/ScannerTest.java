@@ -1,5 +1,6 @@
 package ahodanenok.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,7 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class ScannerTest {
 
@@ -249,6 +251,73 @@ public class ScannerTest {
         assertTokenEquals(new Token(TokenType.EOF, "", null, 1), tokens.get(1));
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 5, 8, 13, 64 })
+    public void testParallelScanMatchesSequential(int chunkSize) {
+        String source = """
+            var greeting = "hello,
+            world";
+            fun add(a, b) {
+              return a + b; // sum
+            }
+            /* block
+               "not a string"
+               /* nested
+                  comment */
+            */ print add(1, 2.5) >= 3.5;
+            var s = "a /* b */ c
+            // d
+            ";
+            class A < B { init() { this.x = "x"; } }
+            @ #
+            print "unterminated
+            var x = 1;
+            """;
+
+        List<String> expectedErrors = new ArrayList<>();
+        List<Token> expected = new Scanner(source, new RecordingReporter(expectedErrors)).scan();
+
+        List<String> actualErrors = new ArrayList<>();
+        List<Token> actual = new ParallelScanner(
+            source, chunkSize, new RecordingReporter(actualErrors)).scan();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTokenEquals(expected.get(i), actual.get(i));
+        }
+        assertEquals(expectedErrors, actualErrors);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 4, 16 })
+    public void testParallelScanStartingInsideBlockComment(int chunkSize) {
+        String source = "/*\nx\n\"\n*/\"y\"\nz";
+
+        List<Token> tokens = new ParallelScanner(source, chunkSize, Lox.reporter).scan();
+        assertEquals(3, tokens.size());
+        assertTokenEquals(new Token(TokenType.STRING, "\"y\"", "y", 4), tokens.get(0));
+        assertTokenEquals(new Token(TokenType.IDENTIFIER, "z", null, 5), tokens.get(1));
+        assertTokenEquals(new Token(TokenType.EOF, "", null, 5), tokens.get(2));
+    }
+
+    @Test
+    public void testTokenStreamMatchesScan() {
+        String source = "var a = \"x\ny\"; /* c\n */ print a + 1.5;\n@ fun f() {}";
+
+        List<String> expectedErrors = new ArrayList<>();
+        List<Token> expected = new Scanner(source, new RecordingReporter(expectedErrors)).scan();
+
+        List<String> actualErrors = new ArrayList<>();
+        TokenStream stream = new TokenStream(new Scanner(source, new RecordingReporter(actualErrors)));
+        for (int i = 0; i < expected.size(); i++) {
+            assertTokenEquals(expected.get(i), stream.get(i));
+            stream.dropBefore(i);
+        }
+        assertEquals(expected.size(), stream.size());
+        assertEquals(expectedErrors, actualErrors);
+        assertThrows(IndexOutOfBoundsException.class, () -> stream.get(0));
+    }
+
     private void assertTokenEquals(Token expected, Token actual) {
         assertEquals(expected.type, actual.type, "Token types doesn't match");
         assertEquals(expected.lexeme, actual.lexeme, "Token lexemes doesn't match");
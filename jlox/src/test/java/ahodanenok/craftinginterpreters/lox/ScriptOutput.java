@@ -0,0 +1,35 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// Captures what runtimes print, the output and the errors together, so a test
+// compares them along with the exit status, i.e. "70: 1\nOperand must be a number.\n[line 2]\n"
+final class ScriptOutput {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    // runs the source on a new runtime
+    static String run(String source) {
+        ScriptOutput output = new ScriptOutput();
+        return output.run(output.newRuntime(), source, Path.of(""));
+    }
+
+    PrintStream stream() {
+        return new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    }
+
+    LoxRuntime newRuntime() {
+        PrintStream stream = stream();
+        return new LoxRuntime(stream, stream);
+    }
+
+    // returns the exit status followed by what was printed during the run
+    String run(LoxRuntime runtime, String source, Path directory) {
+        bytes.reset();
+        int status = runtime.run(source, directory);
+        return status + ": " + bytes.toString(StandardCharsets.UTF_8);
+    }
+}
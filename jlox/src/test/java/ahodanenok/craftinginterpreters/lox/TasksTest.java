@@ -0,0 +1,154 @@
+package ahodanenok.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static ahodanenok.craftinginterpreters.lox.ScriptOutput.run;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TasksTest {
+
+    @Test
+    public void testSpawnAndJoin() {
+        assertEquals("0: 55\n6765\n", run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            var a = spawn(fun() { return fib(10); });
+            var b = spawn(fun() { return fib(20); });
+            print a.join();
+            print b.join();
+            """));
+    }
+
+    @Test
+    public void testCommunicateOverChannels() {
+        // a thousand workers wait on the channel at the same time
+        assertEquals("0: 500500\nnil\n", run("""
+            var requests = Channel(10);
+            var responses = Channel(10);
+            fun worker() {
+                var n = requests.receive();
+                responses.send(n * 2);
+            }
+            // the loop variable is shared by all iterations
+            fun sender(n) { return fun() { requests.send(n); }; }
+            for (var i = 0; i < 1000; i = i + 1) spawn(worker);
+            for (var i = 1; i <= 1000; i = i + 1) spawn(sender(i));
+            var sum = 0;
+            for (var i = 0; i < 1000; i = i + 1) sum = sum + responses.receive();
+            print sum / 2;
+            requests.close();
+            print requests.receive();
+            """));
+    }
+
+    @Test
+    public void testShareClosures() {
+        assertEquals("0: 4000\n", run("""
+            class Counter { init() { this.n = 0; } }
+            fun count() {
+                var counter = Counter();
+                var lock = Channel(1);
+                var tasks = Channel(4);
+                for (var t = 0; t < 4; t = t + 1) {
+                    tasks.send(spawn(fun() {
+                        for (var i = 0; i < 1000; i = i + 1) {
+                            lock.send(nil);
+                            counter.n = counter.n + 1;
+                            lock.receive();
+                        }
+                    }));
+                }
+                for (var t = 0; t < 4; t = t + 1) tasks.receive().join();
+                return counter.n;
+            }
+            print count();
+            """));
+    }
+
+    @Test
+    public void testForkAndJoin() {
+        assertEquals("0: 832040\n", run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            fun pfib(n) {
+                if (n < 20) return fib(n);
+                var a = fork(fun() { return pfib(n - 1); });
+                var b = pfib(n - 2);
+                return join(a) + b;
+            }
+            print pfib(30);
+            """));
+    }
+
+    @Test
+    public void testReduceTree() {
+        assertEquals("0: 32768\n", run("""
+            class Node { init(left, right, value) { this.left = left; this.right = right; this.value = value; } }
+            fun build(depth) {
+                if (depth == 0) return Node(nil, nil, 1);
+                return Node(build(depth - 1), build(depth - 1), 0);
+            }
+            fun sum(node) {
+                if (node == nil) return 0;
+                var left = fork(fun() { return sum(node.left); });
+                return node.value + sum(node.right) + join(left);
+            }
+            print sum(build(15));
+            """));
+    }
+
+    @Test
+    public void testReportErrors() {
+        assertEquals("70: Operand must be a number.\n[line 1]\n", run("""
+            var task = spawn(fun() { return -nil; });
+            task.join();
+            """));
+        assertEquals("70: Operand must be a number.\n[line 1]\n", run("""
+            join(fork(fun() { return -nil; }));
+            """));
+        assertEquals("70: Can only join tasks.\n[line 1]\n", run("join(1);"));
+        assertEquals("70: Can only spawn functions without parameters.\n[line 1]\n",
+            run("spawn(fun(x) { return x; });"));
+        assertEquals("70: Channel capacity must be a positive whole number.\n[line 1]\n",
+            run("Channel(0);"));
+        assertEquals("70: Can't send to a closed channel.\n[line 1]\n",
+            run("var c = Channel(1); c.close(); c.send(1);"));
+    }
+
+    @Test
+    public void testReportErrorsOfTasksNotJoined() {
+        assertEquals("70: done\nOperand must be a number.\n[line 1]\n", run("""
+            spawn(fun() { return -nil; });
+            print "done";
+            """));
+        assertEquals("70: Operand must be a number.\n[line 1]\n",
+            run("fork(fun() { return -nil; });"));
+        // reported once, when joined
+        assertEquals("70: Operand must be a number.\n[line 1]\n", run("""
+            var task = spawn(fun() { return -nil; });
+            spawn(fun() { task.join(); });
+            """));
+    }
+
+    @Test
+    public void testWaitForTasks() {
+        assertEquals("0: 1\n2\n3\n", run("""
+            var c = Channel(1);
+            spawn(fun() {
+                c.receive();
+                print 2;
+                spawn(fun() { c.receive(); print 3; });
+            });
+            print 1;
+            c.send(nil);
+            c.send(nil);
+            """));
+    }
+
+    @Test
+    public void testCancelTasksOfFailedProgram() {
+        assertEquals("70: Operand must be a number.\n[line 3]\n", run("""
+            var c = Channel(1);
+            spawn(fun() { c.receive(); print "received"; });
+            -nil;
+            """));
+    }
+}